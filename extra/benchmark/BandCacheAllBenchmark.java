@@ -0,0 +1,108 @@
+package org.helioviewer.jhv.timelines.band;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.helioviewer.jhv.timelines.draw.YAxis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Inserts of one day of 1 s samples in batches, in order and with jittered times, and
+// reads of a one hour and of the full range at a typical graph width.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BandCacheAllBenchmark {
+
+    private static final long T0 = 1_600_000_000_000L;
+    private static final int SAMPLES = 86400;
+    private static final double GRAPH_WIDTH = 1600;
+
+    @Param({"1000", "86400"})
+    public int batch;
+
+    private final YAxis yAxis = new YAxis(0, 1, new YAxis.YAxisIdentityScale("W m-2"));
+
+    private long[][] orderedDates;
+    private long[][] jitteredDates;
+    private float[][] batchValues;
+    private BandCacheAll filled;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int batches = (SAMPLES + batch - 1) / batch;
+        orderedDates = new long[batches][];
+        jitteredDates = new long[batches][];
+        batchValues = new float[batches][];
+        for (int b = 0; b < batches; b++) {
+            int len = Math.min(batch, SAMPLES - b * batch);
+            orderedDates[b] = new long[len];
+            jitteredDates[b] = new long[len];
+            batchValues[b] = new float[len];
+            for (int i = 0; i < len; i++) {
+                long date = T0 + (b * (long) batch + i) * 1000L;
+                orderedDates[b][i] = date;
+                jitteredDates[b][i] = date + random.nextInt(5000) - 2500; // out of order within a few samples
+                batchValues[b][i] = 1e-6f * (1 + random.nextFloat());
+            }
+        }
+        filled = insert(orderedDates);
+    }
+
+    private BandCacheAll insert(long[][] dates) {
+        BandCacheAll cache = new BandCacheAll();
+        for (int b = 0; b < dates.length; b++)
+            cache.addToCache(yAxis, batchValues[b], dates[b]);
+        return cache;
+    }
+
+    @Benchmark
+    public BandCacheAll insertOrdered() {
+        return insert(orderedDates);
+    }
+
+    @Benchmark
+    public BandCacheAll insertJittered() {
+        return insert(jitteredDates);
+    }
+
+    private static void read(BandCacheAll cache, long start, long end, Blackhole bh) {
+        cache.getValues(GRAPH_WIDTH, start, end, new BandCache.Visitor() {
+            @Override
+            public void value(long milli, float value) {
+                bh.consume(milli);
+                bh.consume(value);
+            }
+
+            @Override
+            public void gap() {
+                bh.consume(0);
+            }
+        });
+    }
+
+    @Benchmark
+    public void readHour(Blackhole bh) {
+        read(filled, T0 + 12 * 3600_000L, T0 + 13 * 3600_000L, bh);
+    }
+
+    @Benchmark
+    public void readDay(Blackhole bh) {
+        read(filled, T0, T0 + SAMPLES * 1000L, bh);
+    }
+
+}
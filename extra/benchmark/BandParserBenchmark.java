@@ -0,0 +1,83 @@
+package org.helioviewer.jhv.timelines.band;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import okio.Buffer;
+
+// Parse time of a band response of 1 s samples already in memory: the org.json document it
+// replaces, the streaming JSON parser and the binary format.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class BandParserBenchmark {
+
+    private static final long T0 = 1_600_000_000L;
+
+    @Param({"86400", "1000000"})
+    public int samples;
+
+    private String json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        long[] dates = new long[samples];
+        float[] values = new float[samples];
+        StringBuilder sb = new StringBuilder(30 * samples).append("{\"timeline\":\"GOES_XRSB\",\"multiplier\":1,\"data\":[");
+        for (int i = 0; i < samples; i++) {
+            dates[i] = (T0 + i) * 1000L;
+            values[i] = (float) (1e-6 * (1 + Math.sin(i / 5000.)) + 1e-7 * random.nextFloat());
+            if (i > 0)
+                sb.append(',');
+            sb.append('[').append(T0 + i).append(',').append(values[i]).append(']');
+        }
+        json = sb.append("]}").toString();
+
+        byte[] name = "GOES_XRSB".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bb = ByteBuffer.allocate(4 + 1 + 4 + name.length + 8 + 4 + 12 * samples).order(ByteOrder.LITTLE_ENDIAN);
+        bb.put(new byte[]{'J', 'H', 'V', 'B', 1}).putInt(name.length).put(name).putDouble(1).putInt(samples);
+        for (int i = 0; i < samples; i++)
+            bb.putLong(i == 0 ? dates[0] : dates[i] - dates[i - 1]);
+        for (float v : values)
+            bb.putFloat(v);
+        binary = bb.array();
+    }
+
+    @Benchmark
+    public BandResponse jsonDocument() {
+        return new BandResponse(new JSONObject(json));
+    }
+
+    @Benchmark
+    public BandResponse jsonStreaming() throws Exception {
+        return BandParser.json(new StringReader(json));
+    }
+
+    @Benchmark
+    public BandResponse binary() throws Exception {
+        return BandParser.binary(new Buffer().write(binary));
+    }
+
+}
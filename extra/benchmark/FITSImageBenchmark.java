@@ -0,0 +1,216 @@
+package org.helioviewer.jhv.view.uri;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.fits.Fits;
+import nom.tam.fits.ImageHDU;
+
+import org.helioviewer.jhv.JHVGlobals;
+import org.helioviewer.jhv.imagedata.ImageBuffer;
+import org.helioviewer.jhv.math.MathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.primitives.Floats;
+
+// Conversion of a mapped 2k and 4k FITS image without HV_DMIN/HV_DMAX, and the selection of its
+// clip points alone, against the path before the per-type kernels, kept below as OldPath: a
+// switch on the pixel type per pixel and the sorted ArrayList<Float> of the samples.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Duser.timezone=UTC"})
+public class FITSImageBenchmark {
+
+    @Param({"2048", "4096"})
+    public int size;
+
+    @Param({"16", "-32"})
+    public int bitpix;
+
+    private final FITSImage reader = new FITSImage();
+    private File file;
+    private URI uri;
+    private OldPath old;
+    private float[] samples;
+
+    @Setup
+    public void setup() throws Exception {
+        JHVGlobals.createDirs();
+
+        // a limb-darkened disk with noise, some pixels above it as a flare
+        Random random = new Random(42);
+        Object[] rows = bitpix == 16 ? new short[size][size] : new float[size][size];
+        float[] values = new float[size * size];
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                double x = 2. * i / size - 1, y = 2. * j / size - 1, r2 = (x * x + y * y) / 0.8;
+                double v = (r2 < 1 ? 4000 * Math.sqrt(1 - r2) : 0) + 200 + 50 * random.nextGaussian();
+                if (random.nextInt(100000) == 0)
+                    v = 30000;
+                if (bitpix == 16)
+                    ((short[][]) rows)[j][i] = (short) v;
+                else
+                    ((float[][]) rows)[j][i] = (float) v;
+                values[j * size + i] = bitpix == 16 ? (short) v : (float) v;
+            }
+        }
+
+        file = Files.createTempFile("bench", ".fits").toFile();
+        try (Fits f = new Fits()) {
+            f.addHDU(Fits.makeHDU(rows));
+            f.write(file);
+        }
+        uri = file.toURI();
+
+        long offset;
+        try (Fits f = new Fits(file)) {
+            offset = ((ImageHDU) f.readHDU()).getData().getFileOffset();
+        }
+        old = new OldPath(file, offset, size, bitpix);
+
+        // the sample grid of FITSImage.sampleImage
+        int step = Math.max(4 * size / 1024, 1);
+        int n = (size + step - 1) / step;
+        samples = new float[n * n];
+        for (int l = 0; l < n; l++)
+            for (int c = 0; c < n; c++)
+                samples[l * n + c] = values[l * step * size + c * step];
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public ImageBuffer convertNew() throws Exception {
+        return reader.readImageBuffer(uri, 0);
+    }
+
+    @Benchmark
+    public short[] convertOld() {
+        return old.convert();
+    }
+
+    @Benchmark
+    public float[] quantilesNew() {
+        return FITSImage.quantiles(samples, FITSImage.MIN_MULT, FITSImage.MAX_MULT);
+    }
+
+    @Benchmark
+    public float[] quantilesOld() {
+        ArrayList<Float> list = new ArrayList<>(samples.length);
+        for (float v : samples)
+            if (v != ImageBuffer.BAD_PIXEL)
+                list.add(v);
+        float[] sorted = Floats.toArray(list);
+        Arrays.sort(sorted);
+        return new float[]{sorted[(int) (FITSImage.MIN_MULT * sorted.length)], sorted[(int) (FITSImage.MAX_MULT * sorted.length)]};
+    }
+
+    // the mapped conversion of FITSImage before the per-type kernels, without BLANK and BZERO/BSCALE
+    private static class OldPath {
+
+        private static final double GAMMA = 1 / 2.2;
+        private static final int SAMPLE = 4;
+        private static final int STRIPE = 64;
+
+        private final ByteBuffer data;
+        private final int width;
+        private final int height;
+        private final int bitpix;
+
+        OldPath(File file, long offset, int size, int _bitpix) throws Exception {
+            width = height = size;
+            bitpix = _bitpix;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) size * size * Math.abs(bitpix) / 8);
+            }
+        }
+
+        float get(int j, int i) {
+            int idx = j * width + i;
+            switch (bitpix) {
+                case 16 -> {
+                    short v = data.getShort(2 * idx);
+                    return (float) (0 + v * 1.);
+                }
+                case -32 -> {
+                    float v = data.getFloat(4 * idx);
+                    return Float.isFinite(v) ? (float) (0 + v * 1.) : ImageBuffer.BAD_PIXEL;
+                }
+                default -> {
+                    return ImageBuffer.BAD_PIXEL;
+                }
+            }
+        }
+
+        short[] convert() {
+            int stepW = Math.max(SAMPLE * width / 1024, 1);
+            int stepH = Math.max(SAMPLE * height / 1024, 1);
+            ArrayList<Float> sampleData = new ArrayList<>((width / stepW) * (height / stepH));
+            for (int j = 0; j < height; j += stepH) {
+                for (int i = 0; i < width; i += stepW) {
+                    float v = get(j, i);
+                    if (v != ImageBuffer.BAD_PIXEL)
+                        sampleData.add(v);
+                }
+            }
+            float[] sorted = Floats.toArray(sampleData);
+            Arrays.sort(sorted);
+            float min = sorted[(int) (FITSImage.MIN_MULT * sorted.length)];
+            float max = Math.max(sorted[(int) (FITSImage.MAX_MULT * sorted.length)], min + 1);
+
+            short[] outData = new short[width * height];
+            float[] lut = new float[65536];
+            double scale = 65535. / Math.pow(max - min, GAMMA);
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(height / STRIPE + 1);
+            for (int j = 0; j < height; j += STRIPE) {
+                int from = j, to = Math.min(height, j + STRIPE);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int k = from; k < to; k++) {
+                        int outLine = width * (height - 1 - k);
+                        for (int i = 0; i < width; i++) {
+                            float v = get(k, i);
+                            if (v == ImageBuffer.BAD_PIXEL) {
+                                outData[outLine + i] = 0;
+                            } else {
+                                v = MathUtils.clip(v, min, max);
+                                int p = (int) MathUtils.clip(scale * MathUtils.pow(v - min, GAMMA) + .5, 0, 65535);
+                                lut[p] = v;
+                                outData[outLine + i] = (short) p;
+                            }
+                        }
+                    }
+                }).fork());
+            }
+            tasks.forEach(ForkJoinTask::join);
+            return outData;
+        }
+
+    }
+
+}
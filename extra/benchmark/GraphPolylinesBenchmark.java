@@ -0,0 +1,148 @@
+package org.helioviewer.jhv.timelines.band;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.helioviewer.jhv.timelines.draw.TimeAxis;
+import org.helioviewer.jhv.timelines.draw.YAxis;
+import org.helioviewer.jhv.timelines.propagation.PropagationModel;
+import org.helioviewer.jhv.timelines.propagation.PropagationModelDelay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Frame time of one band, from the cache to the polylines drawn, with the visitor into
+// GraphPolylines against the previous path, kept below as OldPath: a list of DateValue objects
+// per run of samples, converted to a new pair of pixel arrays per polyline on every update.
+// Run with -prof gc for the allocation rate.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Duser.timezone=UTC"})
+public class GraphPolylinesBenchmark {
+
+    private static final long T0 = 1_600_000_000_000L;
+    private static final int GAP_EVERY = 10000;
+
+    @Param({"86400", "2000000"})
+    public int samples;
+
+    @Param({"1600"})
+    public int width;
+
+    private final YAxis yAxis = new YAxis(1e-8, 1e-3, YAxis.generateScale("logarithmic", "W m-2"));
+    private final PropagationModel propagationModel = new PropagationModelDelay(0);
+    private Rectangle graphArea;
+    private TimeAxis timeAxis;
+
+    private BandCacheAll cache;
+    private final GraphPolylines polylines = new GraphPolylines();
+    private OldPath old;
+
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        long[] dates = new long[samples];
+        float[] values = new float[samples];
+        for (int i = 0; i < samples; i++) {
+            dates[i] = T0 + i * 1000L;
+            values[i] = i % GAP_EVERY == GAP_EVERY - 1 ? YAxis.BLANK : (float) (1e-6 * (1 + Math.sin(i / 5000.)) + 1e-7 * random.nextFloat());
+        }
+        cache = new BandCacheAll();
+        cache.addToCache(yAxis, values, dates);
+        old = new OldPath(dates, values);
+
+        graphArea = new Rectangle(0, 0, width, 200);
+        timeAxis = new TimeAxis(T0, T0 + samples * 1000L);
+        image = new BufferedImage(width, 200, BufferedImage.TYPE_INT_ARGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public GraphPolylines newPath() {
+        long start = propagationModel.getObservationTime(timeAxis.start());
+        long end = propagationModel.getObservationTime(timeAxis.end());
+        polylines.begin(graphArea, timeAxis, yAxis, propagationModel);
+        cache.getValues(graphArea.width, start, end, polylines);
+        polylines.end();
+        polylines.draw(g);
+        return polylines;
+    }
+
+    @Benchmark
+    public List<int[][]> oldPath() {
+        long start = propagationModel.getObservationTime(timeAxis.start());
+        long end = propagationModel.getObservationTime(timeAxis.end());
+        List<int[][]> lines = new ArrayList<>();
+        for (List<OldPath.DateValue> list : old.getValues(start, end)) {
+            if (!list.isEmpty()) {
+                IntArray xs = new IntArray(list.size());
+                IntArray ys = new IntArray(list.size());
+                for (OldPath.DateValue dv : list) {
+                    xs.put(timeAxis.value2pixel(graphArea.x, graphArea.width, propagationModel.getViewpointTime(dv.milli())));
+                    ys.put(yAxis.value2pixel(graphArea.y, graphArea.height, dv.value()));
+                }
+                lines.add(new int[][]{xs.array(), ys.array(), {xs.length()}});
+            }
+        }
+        for (int[][] line : lines)
+            g.drawPolyline(line[0], line[1], line[2][0]);
+        return lines;
+    }
+
+    // the list-based cache and its getValues before the visitor
+    private static class OldPath {
+
+        record DateValue(long milli, float value) {
+        }
+
+        private final ArrayList<DateValue> dateVals;
+
+        OldPath(long[] dates, float[] values) {
+            dateVals = new ArrayList<>(dates.length);
+            for (int i = 0; i < dates.length; i++)
+                dateVals.add(new DateValue(dates[i], values[i]));
+        }
+
+        List<List<DateValue>> getValues(long start, long end) {
+            List<List<DateValue>> ret = new ArrayList<>();
+            List<DateValue> list = new ArrayList<>();
+            for (DateValue dv : dateVals) {
+                if (dv.value == YAxis.BLANK) {
+                    ret.add(list);
+                    list = new ArrayList<>();
+                } else if (start <= dv.milli && dv.milli <= end) {
+                    list.add(dv);
+                }
+            }
+            ret.add(list);
+            return ret;
+        }
+
+    }
+
+}
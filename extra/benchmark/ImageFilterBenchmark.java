@@ -0,0 +1,59 @@
+package org.helioviewer.jhv.imagedata;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The MGN filter on square 8 and 16 bit images of the usual decoded sizes;
+// run with -prof gc to see that the scratch images come from the pool.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ImageFilterBenchmark {
+
+    @Param({"1024", "2048", "4096"})
+    public int size;
+
+    private byte[] bytes;
+    private short[] shorts;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        bytes = new byte[size * size];
+        shorts = new short[size * size];
+        for (int i = 0; i < bytes.length; i++) {
+            int x = i % size, y = i / size;
+            double v = Math.sin(x / 37.) * Math.cos(y / 53.);
+            bytes[i] = (byte) (128 + 100 * v + random.nextInt(20));
+            shorts[i] = (short) (32768 + 30000 * v + random.nextInt(2000));
+        }
+    }
+
+    @Benchmark
+    public Object mgnByte() throws Exception {
+        return ImageFilter.mgn(ByteBuffer.wrap(bytes), size, size);
+    }
+
+    @Benchmark
+    public Object mgnShort() throws Exception {
+        return ImageFilter.mgn(ShortBuffer.wrap(shorts), size, size);
+    }
+
+}
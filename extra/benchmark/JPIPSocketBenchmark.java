@@ -0,0 +1,86 @@
+package org.helioviewer.jhv.view.j2k.jpip;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.helioviewer.jhv.JHVGlobals;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Frames per second read over one JPIP channel from JPIPStandInServer, one request at a time
+// (depth 1) and pipelined like J2KReader.readRange, with and without link latency and with the
+// server closing the connection every few responses. Needs the Kakadu JNI library on
+// java.library.path for JPIPCache.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JPIPSocketBenchmark {
+
+    private static final int FRAMES = 64;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    @Param({"0", "20"})
+    public int latency;
+
+    @Param({"65536"})
+    public int size;
+
+    @Param({"0", "16"})
+    public int closeEvery;
+
+    private JPIPStandInServer server;
+    private JPIPCache cache;
+    private JPIPSocket socket;
+    private final String[] querys = new String[FRAMES];
+    private final int[] frames = new int[FRAMES];
+
+    @Setup
+    public void setup() throws Exception {
+        System.loadLibrary("kdu_jni");
+        JHVGlobals.createDirs();
+
+        server = new JPIPStandInServer(size, latency, closeEvery);
+        cache = new JPIPCache();
+        socket = new JPIPSocket(server.getURI(), cache);
+        for (int i = 0; i < FRAMES; i++) {
+            querys[i] = JPIPQuery.create(JPIPConstants.MAX_REQUEST_LEN, "stream", String.valueOf(i), "fsiz", "1024,1024,closest", "rsiz", "1024,1024", "roff", "0,0");
+            frames[i] = i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        socket.close();
+        server.close();
+        cache.Native_destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long read() throws Exception {
+        long bytes = 0;
+        for (int i = 0; i < FRAMES; i += depth) {
+            int to = Math.min(FRAMES, i + depth);
+            for (JPIPResponse res : socket.request(Arrays.copyOfRange(querys, i, to), Arrays.copyOfRange(frames, i, to), cache))
+                bytes += res.getSize();
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,186 @@
+package org.helioviewer.jhv.view.j2k.jpip;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A loopback stand-in for a JPIP server, for benchmarking and testing the client side of the
+// protocol without a network. Each request is answered with one meta-data bin of the given
+// size for the requested codestream and an EOR window done. The answer leaves the given
+// latency after the arrival of the request, so the latencies of pipelined requests overlap
+// as they would on a real link. With closeEvery > 0, every closeEvery-th response on a
+// connection carries "Connection: close" and the connection is closed after it.
+public class JPIPStandInServer implements Closeable {
+
+    private static final String CID = "JPH_1";
+
+    private record Request(long arrival, String query) {
+    }
+
+    private static final Request END = new Request(0, null);
+
+    private final ServerSocket server;
+    private final byte[] payload;
+    private final long latencyNanos;
+    private final int closeEvery;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "JPIP stand-in");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public JPIPStandInServer(int size, int latencyMillis, int _closeEvery) throws IOException {
+        payload = new byte[size];
+        for (int i = 0; i < size; i++)
+            payload[i] = (byte) (i * 7);
+        latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        closeEvery = _closeEvery;
+
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        pool.execute(this::accept);
+    }
+
+    public URI getURI() {
+        return URI.create("jpip://" + server.getInetAddress().getHostAddress() + ':' + server.getLocalPort() + "/standin.jp2");
+    }
+
+    // number of the image requests answered, without channel requests
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        pool.shutdownNow();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.incrementAndGet();
+                pool.execute(() -> serve(socket));
+            } catch (IOException e) { // closed
+                return;
+            }
+        }
+    }
+
+    // the requests are read ahead in another thread, so that they can be pipelined
+    private void serve(Socket socket) {
+        BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+        pool.execute(() -> readRequests(socket, queue));
+
+        try (socket; OutputStream out = socket.getOutputStream()) {
+            int answered = 0;
+            Request req;
+            while ((req = queue.take()) != END) {
+                if (req.query.contains("cclose="))
+                    return;
+
+                long wait = req.arrival + latencyNanos - System.nanoTime();
+                if (wait > 0)
+                    TimeUnit.NANOSECONDS.sleep(wait);
+
+                boolean close = closeEvery > 0 && ++answered % closeEvery == 0;
+                out.write(response(req.query, close));
+                out.flush();
+                if (close)
+                    return;
+            }
+        } catch (IOException | InterruptedException ignore) {
+        }
+    }
+
+    private static void readRequests(Socket socket, BlockingQueue<Request> queue) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            String requestLine;
+            while ((requestLine = in.readLine()) != null) {
+                if (!requestLine.startsWith("GET "))
+                    continue;
+                long arrival = System.nanoTime();
+
+                String header;
+                do { // the headers are not needed
+                    header = in.readLine();
+                } while (header != null && !header.isEmpty());
+                queue.add(new Request(arrival, requestLine));
+            }
+        } catch (IOException ignore) {
+        } finally {
+            queue.add(END);
+        }
+    }
+
+    private byte[] response(String query, boolean close) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(payload.length + 32);
+        String cnew = null;
+        if (query.contains("cnew=")) {
+            cnew = "cid=" + CID + ",path=jpip,transport=http";
+        } else {
+            requests.incrementAndGet();
+            body.write(0x70); // bin-ID 0 with class and codestream following, final
+            writeVBAS(body, JPIPConstants.META_DATA_BIN_CLASS);
+            writeVBAS(body, getInt(query, "stream"));
+            writeVBAS(body, 0); // offset
+            writeVBAS(body, payload.length);
+            body.write(payload);
+        }
+        body.write(0); // EOR
+        body.write(JPIPConstants.EOR_WINDOW_DONE);
+        writeVBAS(body, 0);
+
+        StringBuilder header = new StringBuilder("HTTP/1.1 200 OK\r\nContent-Type: image/jpp-stream\r\n");
+        if (cnew != null)
+            header.append("JPIP-cnew: ").append(cnew).append("\r\n");
+        if (close)
+            header.append("Connection: close\r\n");
+        header.append("Content-Length: ").append(body.size()).append("\r\n\r\n");
+
+        ByteArrayOutputStream res = new ByteArrayOutputStream(header.length() + body.size());
+        res.write(header.toString().getBytes(StandardCharsets.ISO_8859_1));
+        body.writeTo(res);
+        return res.toByteArray();
+    }
+
+    private static int getInt(String query, String key) {
+        for (String part : query.split("[?&]")) {
+            if (part.startsWith(key + '='))
+                return Integer.parseInt(part.substring(key.length() + 1));
+        }
+        return 0;
+    }
+
+    private static void writeVBAS(ByteArrayOutputStream out, long value) {
+        int groups = 1;
+        while (groups < 9 && value >>> (7 * groups) != 0)
+            groups++;
+        for (int i = groups - 1; i >= 0; i--)
+            out.write((int) ((value >>> (7 * i)) & 0x7F) | (i > 0 ? 0x80 : 0));
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.helioviewer.jhv.view.j2k.jpip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.helioviewer.jhv.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.ehcache.Cache;
+import org.ehcache.PersistentCacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+
+// Load time of a cached stream from a disk-only Ehcache, with its segments visited as for
+// JPIPCache.put, in the binary format against the Java-serialized list of JPIPSegment of the
+// JPIPStream-4 cache, kept below as LegacyStream. The footprint, the serialized size of the
+// entries, is printed at the end of each trial, as the cache directories grow in large blocks.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class JPIPStreamBenchmark {
+
+    private static final int STREAMS = 16;
+
+    @Param({"1000", "10000"})
+    public int segments;
+
+    private Path dir;
+    private PersistentCacheManager binaryManager;
+    private PersistentCacheManager legacyManager;
+    private Cache<String, JPIPStream> binaryCache;
+    private Cache<String, LegacyStream> legacyCache;
+    private long binaryBytes;
+    private long legacyBytes;
+    private long payload;
+    private int next;
+
+    // the shape of the legacy JPIPStream as written by Java serialization
+    private static class LegacyStream implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = JPIPSegment.serialVersionUID;
+
+        final ArrayList<JPIPSegment> segments = new ArrayList<>();
+
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("jpipstream");
+        binaryManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .with(CacheManagerBuilder.persistence(dir.resolve("binary").toString()))
+                .withCache("JPIPStream", CacheConfigurationBuilder
+                        .newCacheConfigurationBuilder(String.class, JPIPStream.class,
+                                ResourcePoolsBuilder.newResourcePoolsBuilder()
+                                        .disk(8, MemoryUnit.GB, true))
+                        .withValueSerializer(new JPIPStreamSerializer()))
+                .build(true);
+        legacyManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .with(CacheManagerBuilder.persistence(dir.resolve("legacy").toString()))
+                .withCache("JPIPStream", CacheConfigurationBuilder
+                        .newCacheConfigurationBuilder(String.class, LegacyStream.class,
+                                ResourcePoolsBuilder.newResourcePoolsBuilder()
+                                        .disk(8, MemoryUnit.GB, true)))
+                .build(true);
+        binaryCache = binaryManager.getCache("JPIPStream", String.class, JPIPStream.class);
+        legacyCache = legacyManager.getCache("JPIPStream", String.class, LegacyStream.class);
+
+        Random random = new Random(42);
+        for (int s = 0; s < STREAMS; s++) {
+            JPIPStream binary = new JPIPStream();
+            LegacyStream legacy = new LegacyStream();
+            for (int i = 0; i < segments; i++) {
+                // mostly small precinct segments, some large, as sent for a 4k image
+                int length = random.nextInt(8) == 0 ? 1024 + random.nextInt(16 * 1024) : 16 + random.nextInt(512);
+                byte[] data = new byte[length];
+                random.nextBytes(data);
+                payload += length;
+
+                JPIPSegment seg = new JPIPSegment();
+                seg.klassID = i == 0 ? KakaduConstants.KDU_MAIN_HEADER_DATABIN : KakaduConstants.KDU_PRECINCT_DATABIN;
+                seg.binID = i;
+                seg.offset = 0;
+                seg.length = length;
+                seg.data = data;
+                seg.isFinal = random.nextBoolean();
+                legacy.segments.add(seg);
+                binary.add(seg.klassID, seg.binID, seg.offset, seg.data, seg.length, seg.isFinal);
+            }
+            binaryBytes += binary.size();
+            legacyBytes += serializedSize(legacy);
+            binaryCache.put(String.valueOf(s), binary);
+            legacyCache.put(String.valueOf(s), legacy);
+        }
+    }
+
+    // as written by the default Ehcache serializer
+    private static long serializedSize(Serializable object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.size();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        System.out.printf("%nSize of %d streams of %d segments: legacy %.2fMB, binary %.2fMB, overhead per segment %.1f -> %.1f bytes%n",
+                STREAMS, segments, legacyBytes / (1024 * 1024.), binaryBytes / (1024 * 1024.),
+                (legacyBytes - payload) / (double) (STREAMS * segments), (binaryBytes - payload) / (double) (STREAMS * segments));
+        binaryManager.close();
+        legacyManager.close();
+        binaryManager.destroy();
+        legacyManager.destroy();
+        FileUtils.deleteDir(dir);
+    }
+
+    private String nextKey() {
+        next = (next + 1) % STREAMS;
+        return String.valueOf(next);
+    }
+
+    @Benchmark
+    public void binary(Blackhole bh) throws Exception {
+        binaryCache.get(nextKey()).forEach((klassID, binID, offset, data, length, isFinal) -> bh.consume(data[length - 1]));
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        for (JPIPSegment seg : legacyCache.get(nextKey()).segments)
+            bh.consume(seg.data[seg.length - 1]);
+    }
+
+}
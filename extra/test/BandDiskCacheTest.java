@@ -0,0 +1,144 @@
+package org.helioviewer.jhv.timelines.band;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.helioviewer.jhv.JHVGlobals;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+// The band chunks are seeded from a local stand-in server, then served from the disk cache with
+// the server stopped: fresh ones without asking, stale ones after a failed revalidation.
+public class BandDiskCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final long START = BandDataProvider.chunkFloor(1_600_000_000_000L);
+    private static final long END = START + 7 * 86400_000L;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private Path dir;
+    private BandType type;
+
+    @BeforeClass
+    public static void setupClass() {
+        System.setProperty("user.timezone", TimeZone.getDefault().getID());
+        JHVGlobals.createDirs();
+    }
+
+    // one sample per hour of the chunk, and one of the next chunk as servers may send
+    private static String response() {
+        StringBuilder sb = new StringBuilder("{\"timeline\":\"TEST\",\"data\":[");
+        for (long t = START; t <= END; t += 3600_000L)
+            sb.append('[').append(t / 1000).append(',').append((t - START) / 3600_000L).append("],");
+        sb.setLength(sb.length() - 1);
+        return sb.append("]}").toString();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("bands");
+        BandDiskCache.init(dir);
+
+        byte[] body = response().getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/bands", exchange -> {
+            requests.incrementAndGet();
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/bands?format=json";
+        type = new BandType(new JSONObject().put("name", "TEST").put("baseUrl", baseUrl));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop(0);
+        BandDiskCache.close();
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static void assertChunk(BandResponse response) {
+        assertEquals(7 * 24, response.dates.length); // the sample of the next chunk is left out
+        for (int i = 0; i < response.dates.length; i++) {
+            assertEquals(START + i * 3600_000L, response.dates[i]);
+            assertEquals(i, (int) response.values[i]);
+        }
+    }
+
+    private void makeStale() throws Exception {
+        String key = BandDataProvider.chunkURI(type, START, END).toString();
+        BandChunk chunk = BandDiskCache.get(key);
+        assertTrue(chunk != null);
+        BandDiskCache.put(key, new BandChunk(0, chunk.etag(), chunk.lastModified(), chunk.dates(), chunk.values()));
+    }
+
+    private void restart() {
+        BandDiskCache.close();
+        BandDiskCache.init(dir);
+    }
+
+    @Test
+    public void testSeededThenOffline() throws Exception {
+        assertChunk(BandDataProvider.download(type, START, END));
+        assertEquals(1, requests.get());
+
+        restart();
+        server.stop(0); // no network from now on
+        assertChunk(BandDataProvider.download(type, START, END)); // fresh, not asked
+        assertEquals(1, requests.get());
+
+        makeStale();
+        assertChunk(BandDataProvider.download(type, START, END)); // revalidation fails, kept data used
+    }
+
+    @Test
+    public void testRevalidated() throws Exception {
+        assertChunk(BandDataProvider.download(type, START, END));
+        makeStale();
+        assertChunk(BandDataProvider.download(type, START, END));
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+
+        restart();
+        assertChunk(BandDataProvider.download(type, START, END)); // checked again by the revalidation
+        assertEquals(2, requests.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOfflineNotKept() throws Exception {
+        server.stop(0);
+        BandDataProvider.download(type, START, END);
+    }
+
+}
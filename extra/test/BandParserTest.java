@@ -0,0 +1,114 @@
+package org.helioviewer.jhv.timelines.band;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import okio.Buffer;
+
+// Both parsers against new BandResponse(JSONObject), which they replace: the dates and the
+// bits of the values must be identical.
+public class BandParserTest {
+
+    private static final String[] fixtures = {
+            // plain
+            "{\"timeline\":\"GOES_XRSB\",\"multiplier\":1,\"data\":[[1600000000,1.5e-6],[1600000001,2.25E-6],[1600000002,3]]}",
+            // exponents of all forms, signs and negative values
+            "{\"timeline\":\"e\",\"data\":[[1,1e-9],[2,-4.2E+3],[3,7e22],[4,7e23],[5,1.0e-300],[6,-0.0],[7,+5],[8,12.5e-1],[1.6e9,1],[-5,1],[-2.5,1]]}",
+            // more than 15 significant digits, in the values and in the times
+            "{\"timeline\":\"digits\",\"data\":[[1600000000,0.1234567890123456789],[1600000001,123456789012345678],"
+                    + "[1600000002.999,3.141592653589793238462643],[16000000001234567890,1e-7]]}",
+            // members before and after the data, in the entries too, and a multiplier
+            "{\"extra\":{\"a\":[1,2,{\"b\":\"]}\\\"\"}]},\"data\":[[10,0.3,\"x\",[1]],[20,0.7,null]],"
+                    + "\"timeline\":\"extra \\u00e9\\n\",\"multiplier\":\"1e-3\",\"bandType\":{\"name\":\"X\",\"range\":[0,2]}}",
+            // whitespace everywhere
+            " { \"timeline\" : \"ws\" , \"data\" : [ [ 1 , 2 ] ,\n\t[ 3 , 4.5 ] ] } ",
+            // no data
+            "{\"timeline\":\"null\",\"data\":null}",
+            "{\"timeline\":\"empty\",\"data\":[]}",
+            "{\"data\":[[1,1]]}",
+            "{}",
+    };
+
+    private static void assertIdentical(String what, BandResponse expected, BandResponse actual) {
+        assertEquals(what, expected.bandName, actual.bandName);
+        assertEquals(what, expected.bandType == null, actual.bandType == null);
+        if (expected.bandType != null)
+            assertEquals(what, expected.bandType.getName(), actual.bandType.getName());
+
+        assertEquals(what, expected.dates.length, actual.dates.length);
+        assertEquals(what, expected.values.length, actual.values.length);
+        for (int i = 0; i < expected.dates.length; i++) {
+            assertEquals(what + " date " + i, expected.dates[i], actual.dates[i]);
+            assertEquals(what + " value " + i, Float.floatToRawIntBits(expected.values[i]), Float.floatToRawIntBits(actual.values[i]));
+        }
+    }
+
+    @Test
+    public void testJSON() throws Exception {
+        for (String fixture : fixtures)
+            assertIdentical(fixture, new BandResponse(new JSONObject(fixture)), BandParser.json(new StringReader(fixture)));
+    }
+
+    @Test
+    public void testJSONSmallBuffer() throws Exception { // tokens split across reads
+        for (String fixture : fixtures) {
+            BandResponse actual = BandParser.json(new StringReader(fixture) {
+                @Override
+                public int read(char[] cbuf, int off, int len) throws IOException {
+                    return super.read(cbuf, off, Math.min(len, 3));
+                }
+            });
+            assertIdentical(fixture, new BandResponse(new JSONObject(fixture)), actual);
+        }
+    }
+
+    static byte[] encode(String name, double multiplier, long[] dates, float[] values) {
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        int n = dates.length;
+        ByteBuffer bb = ByteBuffer.allocate(4 + 1 + 4 + utf8.length + 8 + 4 + 12 * n).order(ByteOrder.LITTLE_ENDIAN);
+        bb.put(new byte[]{'J', 'H', 'V', 'B', 1}).putInt(utf8.length).put(utf8).putDouble(multiplier).putInt(n);
+        for (int i = 0; i < n; i++)
+            bb.putLong(i == 0 ? dates[0] : dates[i] - dates[i - 1]);
+        for (float v : values)
+            bb.putFloat(v);
+        return bb.array();
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        for (String fixture : fixtures) {
+            BandResponse expected = new BandResponse(new JSONObject(fixture));
+            byte[] data = encode(expected.bandName, 1, expected.dates, expected.values);
+            BandResponse actual = BandParser.binary(new Buffer().write(data));
+
+            assertEquals(fixture, expected.bandName, actual.bandName);
+            assertTrue(fixture, actual.bandType == null);
+            assertEquals(fixture, expected.dates.length, actual.dates.length);
+            for (int i = 0; i < expected.dates.length; i++) {
+                assertEquals(fixture + " date " + i, expected.dates[i], actual.dates[i]);
+                assertEquals(fixture + " value " + i, Float.floatToRawIntBits(expected.values[i]), Float.floatToRawIntBits(actual.values[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryRejected() throws Exception {
+        byte[] data = encode("x", 1, new long[]{1}, new float[]{1});
+        data[4] = 2; // version
+        try {
+            BandParser.binary(new Buffer().write(data));
+            assertTrue("accepted", false);
+        } catch (IOException expected) {
+        }
+    }
+
+}
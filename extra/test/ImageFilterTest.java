@@ -0,0 +1,81 @@
+package org.helioviewer.jhv.imagedata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+// The MGN filter against reference outputs of the original single-pass implementation,
+// stored in golden/ as gzipped raw samples (16 bit ones big-endian). The size is not a
+// multiple of the stripes and tiles the filter is split in.
+public class ImageFilterTest {
+
+    static final int WIDTH = 257;
+    static final int HEIGHT = 161;
+
+    private static final Path golden = Path.of("extra", "test", "golden");
+
+    static byte[] input8() {
+        byte[] data = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < data.length; i++) {
+            int x = i % WIDTH, y = i / WIDTH;
+            data[i] = (byte) (128 + 100 * Math.sin(x / 17.) * Math.cos(y / 23.) + (i * 7919 % 20));
+        }
+        return data;
+    }
+
+    static short[] input16() {
+        short[] data = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < data.length; i++) {
+            int x = i % WIDTH, y = i / WIDTH;
+            data[i] = (short) (32768 + 30000 * Math.sin(x / 13.) * Math.cos(y / 29.) + (i * 7919 % 2000));
+        }
+        return data;
+    }
+
+    private static byte[] read(String name) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(golden.resolve(name)))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testByte() throws Exception {
+        byte[] expected = read("mgn8.raw.gz");
+        ByteBuffer out = (ByteBuffer) ImageFilter.mgn(ByteBuffer.wrap(input8()), WIDTH, HEIGHT);
+
+        assertEquals(expected.length, out.remaining());
+        for (int i = 0; i < expected.length; i++)
+            assertTrue("sample " + i, expected[i] == out.get(i));
+    }
+
+    @Test
+    public void testShort() throws Exception {
+        ShortBuffer expected = ByteBuffer.wrap(read("mgn16.raw.gz")).asShortBuffer();
+        ShortBuffer out = (ShortBuffer) ImageFilter.mgn(ShortBuffer.wrap(input16()), WIDTH, HEIGHT);
+
+        assertEquals(expected.remaining(), out.remaining());
+        for (int i = 0; i < expected.remaining(); i++)
+            assertTrue("sample " + i, expected.get(i) == out.get(i));
+    }
+
+    @Test
+    public void testPooledImages() throws Exception { // the recycled scratch images do not leak into the result
+        byte[] expected = read("mgn8.raw.gz");
+        for (int i = 0; i < 3; i++) {
+            ImageFilter.mgn(ShortBuffer.wrap(input16()), WIDTH, HEIGHT);
+            ByteBuffer out = (ByteBuffer) ImageFilter.mgn(ByteBuffer.wrap(input8()), WIDTH, HEIGHT);
+            for (int j = 0; j < expected.length; j++)
+                assertTrue("sample " + j, expected[j] == out.get(j));
+        }
+    }
+
+}
@@ -13,6 +13,7 @@ import org.helioviewer.jhv.gui.Message;
 import org.helioviewer.jhv.io.FileUtils;
 import org.helioviewer.jhv.io.ProxySettings;
 import org.helioviewer.jhv.metadata.AIAResponse;
+import org.helioviewer.jhv.timelines.band.BandDiskCache;
 import org.helioviewer.jhv.view.j2k.jpip.JPIPCacheManager;
 import org.helioviewer.jhv.view.j2k.kakadu.KakaduMessageSystem;
 
@@ -36,6 +37,11 @@ class JHVInit {
         } catch (Exception e) {
             Log.error("JPIP cache initialization error", e);
         }
+        try {
+            BandDiskCache.init();
+        } catch (Exception e) {
+            Log.error("Band cache initialization error", e);
+        }
 
         ProxySettings.init();
         try {
@@ -20,6 +20,11 @@ public class Settings {
             super.setProperty("display.time", "Observer");
             super.setProperty("timeout.read", "120000");
             super.setProperty("timeout.connect", "30000");
+            super.setProperty("jpip.channels", "4");
+            super.setProperty("jpip.nio", "true");
+            super.setProperty("cache.decode", "0");
+            super.setProperty("cache.inflate", "4096");
+            super.setProperty("cache.bands", "256");
             super.setProperty("update.next", "0");
             super.setProperty("video.format", "H264");
         }
@@ -33,11 +33,12 @@ class InteractionPan implements InteractionType {
         Vec2 pan = camera.getTranslation();
         double m = 1 / CameraHelper.getImagePixelFactor(camera, Display.getActiveViewport());
         camera.setTranslation(pan.x + x * m, pan.y - y * m);
-        MovieDisplay.display();
+        MovieDisplay.renderUncovered();
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
+        MovieDisplay.render(1);
     }
 
     @Override
@@ -37,11 +37,12 @@ class InteractionRotate implements InteractionType {
         Vec3 rotationEndPoint = CameraHelper.getVectorFromSphereTrackball(camera, Display.getActiveViewport(), e.getX(), e.getY(), len2);
 
         camera.rotateDragRotation(Quat.calcRotation(rotationStartPoint, rotationEndPoint));
-        MovieDisplay.display();
+        MovieDisplay.renderUncovered();
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
+        MovieDisplay.render(1);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package org.helioviewer.jhv.gui;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.Timer;
 
@@ -22,19 +23,23 @@ public class UITimer {
             lazyComponents.add(component);
     }
 
-    private static volatile boolean cacheChanged = false;
+    // range of frames whose cache status changed since the last tick
+    private static final AtomicInteger changedFrom = new AtomicInteger(Integer.MAX_VALUE);
+    private static final AtomicInteger changedTo = new AtomicInteger(-1);
 
     // accessed from J2KReader threads
-    public static void cacheStatusChanged() {
-        cacheChanged = true;
+    public static void cacheStatusChanged(int frame) {
+        changedFrom.accumulateAndGet(frame, Math::min);
+        changedTo.accumulateAndGet(frame, Math::max);
     }
 
     private static void action() {
         BusyIndicator.incrementAngle();
 
-        if (cacheChanged) {
-            cacheChanged = false;
-            MoviePanel.getTimeSlider().repaint();
+        int to = changedTo.getAndSet(-1);
+        if (to >= 0) {
+            int from = changedFrom.getAndSet(Integer.MAX_VALUE);
+            MoviePanel.getTimeSlider().repaintFrames(Math.min(from, to), to);
         }
 
         lazyComponents.forEach(LazyComponent::lazyRepaint);
@@ -4,6 +4,7 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
@@ -81,6 +82,21 @@ public final class TimeSlider extends JSlider implements LazyComponent, MouseLis
         dirty = true;
     }
 
+    // repaint only the part of the track showing these frames of the active layer
+    public void repaintFrames(int from, int to) {
+        ImageLayer layer = Layers.getActiveImageLayer();
+        if (layer == null)
+            return;
+        int len = layer.getView().getMaximumFrameNumber();
+        if (len <= 0 || from >= len)
+            return;
+
+        Rectangle track = sliderUI.getTrackRect();
+        int begin = (int) ((float) from / len * track.width);
+        int end = (int) ((float) (Math.min(to, len - 1) + 1) / len * track.width);
+        super.repaint(track.x + begin - 1, 0, end - begin + 3, getHeight());
+    }
+
     @Override
     public void lazyRepaint() {
         if (dirty) {
@@ -156,6 +172,10 @@ public final class TimeSlider extends JSlider implements LazyComponent, MouseLis
             super(component);
         }
 
+        Rectangle getTrackRect() {
+            return trackRect;
+        }
+
         @Override
         public void paintThumb(Graphics g1) {
             Graphics2D g = (Graphics2D) g1;
@@ -184,7 +204,13 @@ public final class TimeSlider extends JSlider implements LazyComponent, MouseLis
                 g.drawLine(trackRect.x, y, trackRect.x + trackRect.width, y);
             } else {
                 int len = view.getMaximumFrameNumber();
-                for (int i = 0; i < len; i++) {
+                int lo = 0, hi = len;
+                Rectangle clip = g.getClipBounds();
+                if (clip != null && trackRect.width > 0) { // only the frames within the repainted part
+                    lo = Math.max(0, (int) ((float) (clip.x - trackRect.x) / trackRect.width * len) - 1);
+                    hi = Math.min(len, (int) ((float) (clip.x + clip.width - trackRect.x) / trackRect.width * len) + 2);
+                }
+                for (int i = lo; i < hi; i++) {
                     int begin = (int) ((float) i / len * trackRect.width);
                     int end = (int) ((float) (i + 1) / len * trackRect.width);
                     if (end == begin)
@@ -4,6 +4,10 @@ import org.helioviewer.jhv.gui.UITimer;
 import org.helioviewer.jhv.gui.components.StatusPanel;
 import org.helioviewer.jhv.gui.interfaces.LazyComponent;
 import org.helioviewer.jhv.opengl.GLListener;
+import org.helioviewer.jhv.view.DecodeCache;
+import org.helioviewer.jhv.view.DecodeExecutor;
+import org.helioviewer.jhv.view.j2k.PlaybackGovernor;
+import org.helioviewer.jhv.view.j2k.kakadu.KakaduThreads;
 
 @SuppressWarnings("serial")
 public final class FramerateStatusPanel extends StatusPanel.StatusPlugin implements LazyComponent {
@@ -22,6 +26,7 @@ public final class FramerateStatusPanel extends StatusPanel.StatusPlugin impleme
             fps = f;
             setText(String.format("FPS: %2d", fps));
         }
+        setToolTipText("<html>" + DecodeExecutor.getPrefetchStats() + "<br>" + DecodeCache.getAllStats() + "<br>" + KakaduThreads.getStats() + "<br>" + PlaybackGovernor.getAllStats());
     }
 
 }
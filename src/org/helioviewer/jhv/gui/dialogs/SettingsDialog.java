@@ -44,6 +44,7 @@ import org.helioviewer.jhv.io.DataSources;
 import org.helioviewer.jhv.plugins.Plugin;
 import org.helioviewer.jhv.plugins.PluginManager;
 import org.helioviewer.jhv.time.TimeMode;
+import org.helioviewer.jhv.timelines.band.BandDiskCache;
 import org.helioviewer.jhv.view.j2k.jpip.JPIPCacheManager;
 
 import com.jidesoft.dialog.ButtonPanel;
@@ -52,10 +53,10 @@ import com.jidesoft.dialog.StandardDialog;
 @SuppressWarnings("serial")
 public final class SettingsDialog extends StandardDialog implements ShowableDialog {
 
-    private final JLabel labelCache = new JLabel("The image cache currently uses 0.0GB on disk.", JLabel.RIGHT);
+    private final JLabel labelCache = new JLabel("The cache currently uses 0.0GB on disk.", JLabel.RIGHT);
 
     private void setLabelCache() {
-        labelCache.setText(String.format("The image cache currently uses %.1fGB on disk.", JPIPCacheManager.getSize() / (1024 * 1024 * 1024.)));
+        labelCache.setText(String.format("The cache currently uses %.1fGB on disk.", (JPIPCacheManager.getSize() + BandDiskCache.getSize()) / (1024 * 1024 * 1024.)));
     }
 
     private DefaultsSelectionPanel defaultsPanel;
@@ -213,9 +214,10 @@ public final class SettingsDialog extends StandardDialog implements ShowableDial
         clearCache.addActionListener(e -> {
             try {
                 JPIPCacheManager.clear();
+                BandDiskCache.clear();
                 setLabelCache();
             } catch (Exception ex) {
-                Log.error("JPIP cache clear error", ex);
+                Log.error("Cache clear error", ex);
             }
         });
         cache.add(labelCache);
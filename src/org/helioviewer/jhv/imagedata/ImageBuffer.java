@@ -3,6 +3,7 @@ package org.helioviewer.jhv.imagedata;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ImageBuffer {
 
@@ -24,16 +25,49 @@ public class ImageBuffer {
     public final Buffer buffer;
     private final float[] lut;
 
+    // pooled storage is returned to the pool when the last holder releases it
+    private final ByteBuffer pooled;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
     public ImageBuffer(int _width, int _height, Format _format, Buffer _buffer) {
         this(_width, _height, _format, _buffer, null);
     }
 
     public ImageBuffer(int _width, int _height, Format _format, Buffer _buffer, float[] _lut) {
+        this(_width, _height, _format, _buffer, _lut, null);
+    }
+
+    private ImageBuffer(int _width, int _height, Format _format, Buffer _buffer, float[] _lut, ByteBuffer _pooled) {
         width = _width;
         height = _height;
         format = _format;
         buffer = _buffer;
         lut = _lut;
+        pooled = _pooled;
+    }
+
+    // Direct storage from the pool, the caller holds the only reference
+    public static ImageBuffer allocatePooled(int width, int height, Format format) {
+        ByteBuffer buf = ImageBufferPool.acquire(width * height * format.bytes);
+        return new ImageBuffer(width, height, format, buf, null, buf);
+    }
+
+    // Takes a reference, fails if the storage was already recycled
+    public boolean retain() {
+        if (pooled == null)
+            return true;
+        int r;
+        do {
+            r = refs.get();
+            if (r <= 0)
+                return false;
+        } while (!refs.compareAndSet(r, r + 1));
+        return true;
+    }
+
+    public void release() {
+        if (pooled != null && refs.decrementAndGet() == 0)
+            ImageBufferPool.recycle(pooled);
     }
 
     public static ImageBuffer mgnFilter(ImageBuffer ib, boolean mgn) throws Exception {
@@ -42,6 +76,11 @@ public class ImageBuffer {
         return new ImageBuffer(ib.width, ib.height, ib.format, ImageFilter.mgn(ib.buffer, ib.width, ib.height), ib.lut);
     }
 
+    // next level of the pyramid, on heap
+    public static ImageBuffer downsample(ImageBuffer ib) {
+        return new ImageBuffer((ib.width + 1) / 2, (ib.height + 1) / 2, ib.format, ImagePyramid.downsample(ib.buffer, ib.format, ib.width, ib.height), ib.lut);
+    }
+
     private int getPixelInternal(int x, int y) {
         if (x < 0 || x > width - 1 || y < 0 || y > height - 1 || format == Format.ARGB32)
             return BAD_PIXEL;
@@ -0,0 +1,35 @@
+package org.helioviewer.jhv.imagedata;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Direct buffers of released images, reused for images of the same byte size
+class ImageBufferPool {
+
+    private static final long MAX_POOLED = 256 * 1024 * 1024;
+
+    private static final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>> free = new ConcurrentHashMap<>();
+    private static final AtomicLong pooled = new AtomicLong();
+
+    static ByteBuffer acquire(int size) {
+        ConcurrentLinkedQueue<ByteBuffer> queue = free.get(size);
+        ByteBuffer buf = queue == null ? null : queue.poll();
+        if (buf == null)
+            return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        pooled.addAndGet(-size);
+        return buf.clear();
+    }
+
+    static void recycle(ByteBuffer buf) {
+        int size = buf.capacity();
+        if (pooled.addAndGet(size) > MAX_POOLED) { // let GC have it
+            pooled.addAndGet(-size);
+            return;
+        }
+        free.computeIfAbsent(size, k -> new ConcurrentLinkedQueue<>()).offer(buf);
+    }
+
+}
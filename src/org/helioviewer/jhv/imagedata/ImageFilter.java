@@ -3,12 +3,16 @@ package org.helioviewer.jhv.imagedata;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ForkJoinTask;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinTask;
 
 import org.helioviewer.jhv.math.MathUtils;
 
+// The scales are filtered one after the other, each pass is split in row stripes or column tiles
+// run in parallel. The columns are filtered a tile at a time along the rows, so that the memory is
+// read in order; the residual, the normalization and the sum of the scales are fused into the
+// column passes. The working images are sized to the frame and a few are pooled for the next frames.
 class ImageFilter {
 
     // derived from http://dev.ipol.im/~getreuer/code/
@@ -34,9 +38,9 @@ class ImageFilter {
         // Number of boxes
         private final int K;
 
-        private final float[] buffer;
+        private final int pad;
 
-        GaussFilter(double sigma, int _K, int N) {
+        GaussFilter(double sigma, int _K) {
             K = _K;
 
             int i = K - SII_MIN_K;
@@ -50,8 +54,7 @@ class ImageFilter {
             for (int k = 0; k < K; ++k)
                 weights[k] = (float) (weights0[i][k] / sum);
 
-            int pad = radii[0] + 1;
-            buffer = new float[N + 2 * pad];
+            pad = radii[0] + 1;
         }
 
         private static int extension(int N, int n) {
@@ -66,134 +69,244 @@ class ImageFilter {
             return n;
         }
 
-        private void gaussianConv(float[] dst, float[] src, int N, int stride, int offset) {
-            int pad = radii[0] + 1;
-            float accum = 0;
+        // stacked box filters at n of the cumulative sums, tw interleaved lines
+        private float boxes(float[] buffer, int n, int tw, int c) {
+            float accum = weights[0] * (buffer[(pad + n + radii[0]) * tw + c] - buffer[(pad + n - radii[0] - 1) * tw + c]);
+            for (int k = 1; k < K; ++k)
+                accum += weights[k] * (buffer[(pad + n + radii[k]) * tw + c] - buffer[(pad + n - radii[k] - 1) * tw + c]);
+            return accum;
+        }
 
-            // Compute cumulative sum of src over n = -pad,..., N + pad - 1
-            for (int n = -pad; n < 0; ++n) {
-                accum += src[offset + stride * extension(N, n)];
-                buffer[pad + n] = accum;
+        // rows from..to, in place allowed
+        void convRows(float[] dst, float[] src, int width, int from, int to) {
+            float[] buffer = scratch(width + 2 * pad);
+            for (int y = from; y < to; ++y) {
+                int offset = width * y;
+                float accum = 0;
+
+                // Compute cumulative sum of src over n = -pad,..., N + pad - 1
+                for (int n = -pad; n < 0; ++n) {
+                    accum += src[offset + extension(width, n)];
+                    buffer[pad + n] = accum;
+                }
+                for (int n = 0; n < width; ++n) {
+                    accum += src[offset + n];
+                    buffer[pad + n] = accum;
+                }
+                for (int n = width; n < width + pad; ++n) {
+                    accum += src[offset + extension(width, n)];
+                    buffer[pad + n] = accum;
+                }
+
+                for (int n = 0; n < width; ++n)
+                    dst[offset + n] = boxes(buffer, n, 1, 0);
             }
-            for (int n = 0; n < N; ++n) {
-                accum += src[offset + stride * n];
-                buffer[pad + n] = accum;
+        }
+
+        // columns x0..x1 of src, each filtered value is passed to sink with its index
+        void convColumns(float[] src, int width, int height, int x0, int x1, Sink sink) {
+            int tw = x1 - x0;
+            float[] buffer = scratch((height + 2 * pad) * tw + tw);
+            int acc = (height + 2 * pad) * tw; // the running sums, after the cumulative sums
+            for (int c = 0; c < tw; ++c)
+                buffer[acc + c] = 0;
+
+            for (int n = -pad; n < height + pad; ++n) {
+                int row = (n < 0 || n >= height ? extension(height, n) : n) * width + x0;
+                int line = (pad + n) * tw;
+                for (int c = 0; c < tw; ++c) {
+                    float accum = buffer[acc + c] + src[row + c];
+                    buffer[acc + c] = accum;
+                    buffer[line + c] = accum;
+                }
             }
-            for (int n = N; n < N + pad; ++n) {
-                accum += src[offset + stride * extension(N, n)];
-                buffer[pad + n] = accum;
+
+            for (int n = 0; n < height; ++n) {
+                int row = n * width + x0;
+                for (int c = 0; c < tw; ++c)
+                    sink.put(row + c, boxes(buffer, n, tw, c));
             }
+        }
+
+    }
+
+    private interface Sink {
+        void put(int i, float v);
+    }
+
+    private interface Range {
+        void apply(int from, int to);
+    }
+
+    private static final int STRIPE = 32; // rows per task
+    private static final int TILE = 16; // columns per task
+
+    private static void parallel(int count, int chunk, Range range) {
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(count / chunk + 1);
+        for (int i = 0; i < count; i += chunk) {
+            int from = i, to = Math.min(count, i + chunk);
+            tasks.add(ForkJoinTask.adapt(() -> range.apply(from, to)).fork());
+        }
+        tasks.forEach(ForkJoinTask::join);
+    }
+
+    // line buffer of the worker thread
+    private static final ThreadLocal<float[]> lineScratch = ThreadLocal.withInitial(() -> new float[0]);
+
+    private static float[] scratch(int size) {
+        float[] buffer = lineScratch.get();
+        if (buffer.length < size) {
+            buffer = new float[size];
+            lineScratch.set(buffer);
+        }
+        return buffer;
+    }
 
-            // Compute stacked box filters
-            for (int n = 0; n < N; ++n) {
-                accum = weights[0] * (buffer[pad + n + radii[0]] - buffer[pad + n - radii[0] - 1]);
-                for (int k = 1; k < K; ++k)
-                    accum += weights[k] * (buffer[pad + n + radii[k]] - buffer[pad + n - radii[k] - 1]);
-                dst[offset + stride * n] = accum;
+    // working images returned after use, shared by the decoder threads and bounded in bytes
+    private static final long POOL_BYTES = Runtime.getRuntime().maxMemory() / 16;
+    private static final ArrayDeque<float[][]> pool = new ArrayDeque<>();
+    private static long pooledBytes;
+
+    private static synchronized float[][] takeImages(int size) {
+        for (float[][] images : pool) {
+            if (images[0].length == size) {
+                pool.remove(images);
+                pooledBytes -= bytes(images);
+                return images;
             }
         }
+        return new float[][]{new float[size], new float[size], new float[size], new float[size]};
+    }
 
-        void gaussianConvImage(float[] dst, float[] src, int width, int height) {
-            // Filter each row
-            for (int y = 0; y < height; ++y)
-                gaussianConv(dst, src, width, 1, width * y);
-            // Filter each column
-            for (int x = 0; x < width; ++x)
-                gaussianConv(dst, dst, height, width, x);
+    private static synchronized void putImages(float[][] images) {
+        long bytes = bytes(images);
+        while (!pool.isEmpty() && pooledBytes + bytes > POOL_BYTES) // the oldest go first
+            pooledBytes -= bytes(pool.removeFirst());
+        if (bytes <= POOL_BYTES) {
+            pool.addLast(images);
+            pooledBytes += bytes;
         }
+    }
 
+    private static long bytes(float[][] images) {
+        return 4L * images.length * images[0].length;
     }
 
     private static final int K = 3;
     private static final float H = 0.7f;
     private static final double[] sigmas = {1, 4, 16, 64};
     private static final double[] weights = {0.25, 0.5, 0.75, 1};
+    private static final GaussFilter[] filters = new GaussFilter[sigmas.length];
 
-    private record ScaleTask(float[] data, int width, int height, double sigma, double weight)
-            implements Callable<float[]> {
-        @Override
-        public float[] call() {
-            GaussFilter filter = new GaussFilter(sigma, K, Math.max(width, height));
-
-            int size = width * height;
-            float[] conv = new float[size];
-            float[] conv2 = new float[size];
-
-            filter.gaussianConvImage(conv, data, width, height);
-            for (int i = 0; i < size; ++i) {
-                float v = data[i] - conv[i];
-                conv[i] = v;
-                conv2[i] = v * v;
-            }
-            filter.gaussianConvImage(conv2, conv2, width, height);
-
-            for (int i = 0; i < size; ++i)
-                conv[i] = conv2[i] == 0 ? 0 : (float) (weight * MathUtils.clip(conv[i] / Math.sqrt(conv2[i]), -1, 1));
-
-            return conv;
-        }
-    }
-
-    private static float[] multiScale(float[] data, int width, int height) {
-        ArrayList<ForkJoinTask<float[]>> tasks = new ArrayList<>(sigmas.length);
+    static {
         for (int i = 0; i < sigmas.length; ++i)
-            tasks.add(ForkJoinTask.adapt(new ScaleTask(data, width, height, sigmas[i], weights[i])).fork());
+            filters[i] = new GaussFilter(sigmas[i], K);
+    }
 
-        int size = width * height;
-        float[] image = new float[size];
-        for (ForkJoinTask<float[]> task : tasks) {
-            float[] res = task.join();
-            for (int i = 0; i < size; ++i)
-                image[i] += res[i];
+    // the filtered image is passed to out
+    private static void multiScale(float[] data, float[] image, float[] conv, float[] conv2, int width, int height, Sink out) {
+        for (int s = 0; s < sigmas.length; ++s) {
+            GaussFilter filter = filters[s];
+            double weight = weights[s];
+            boolean first = s == 0;
+
+            parallel(height, STRIPE, (from, to) -> filter.convRows(conv, data, width, from, to));
+            parallel(width, TILE, (from, to) -> filter.convColumns(conv, width, height, from, to, (i, v) -> {
+                float r = data[i] - v;
+                conv[i] = r;
+                conv2[i] = r * r;
+            }));
+
+            parallel(height, STRIPE, (from, to) -> filter.convRows(conv2, conv2, width, from, to));
+            parallel(width, TILE, (from, to) -> filter.convColumns(conv2, width, height, from, to, (i, v) -> {
+                float r = v == 0 ? 0 : (float) (weight * MathUtils.clip(conv[i] / Math.sqrt(v), -1, 1));
+                image[i] = first ? r : image[i] + r;
+            }));
         }
 
-        float min = 1e6f, max = -1e6f;
-        for (int i = 0; i < size; ++i) {
-            float v = image[i];
-            if (v > max)
-                max = v;
-            if (v < min)
-                min = v;
+        float[] range = new float[]{1e6f, -1e6f};
+        parallel(height, STRIPE, (from, to) -> {
+            float min = 1e6f, max = -1e6f;
+            for (int i = from * width; i < to * width; ++i) {
+                float v = image[i];
+                if (v > max)
+                    max = v;
+                if (v < min)
+                    min = v;
+            }
+            synchronized (range) {
+                range[0] = Math.min(range[0], min);
+                range[1] = Math.max(range[1], max);
+            }
+        });
+        float min = range[0], max = range[1];
+
+        if (min == max) {
+            parallel(height, STRIPE, (from, to) -> {
+                for (int i = from * width; i < to * width; ++i)
+                    out.put(i, data[i]);
+            });
+            return;
         }
 
-        if (min == max)
-            return data;
-
         float k = (1 - H) / (max - min);
-        for (int i = 0; i < size; ++i)
-            image[i] = k * (image[i] - min) + H * data[i];
-        return image;
+        parallel(height, STRIPE, (from, to) -> {
+            for (int i = from * width; i < to * width; ++i)
+                out.put(i, k * (image[i] - min) + H * data[i]);
+        });
     }
 
     private static ByteBuffer mgn(ByteBuffer buf, int width, int height) {
         int size = width * height;
-        float[] data = new float[size];
+        float[][] images = takeImages(size);
+        try {
+            return mgn(buf, width, height, images);
+        } finally {
+            putImages(images);
+        }
+    }
 
-        byte[] array = buf.array(); // always backed by array
-        for (int i = 0; i < size; ++i)
-            data[i] = ((array[i] + 256) & 0xFF) / 255f;
+    private static ByteBuffer mgn(ByteBuffer buf, int width, int height, float[][] images) {
+        int size = width * height;
+        float[] data = images[0];
 
-        float[] image = multiScale(data, width, height);
+        byte[] array = buf.hasArray() ? buf.array() : new byte[size];
+        if (!buf.hasArray()) // pooled direct storage
+            buf.get(0, array);
+        parallel(height, STRIPE, (from, to) -> {
+            for (int i = from * width; i < to * width; ++i)
+                data[i] = ((array[i] + 256) & 0xFF) / 255f;
+        });
 
         byte[] out = new byte[size];
-        for (int i = 0; i < size; ++i)
-            out[i] = (byte) MathUtils.clip(image[i] * 255 + .5f, 0, 255);
+        multiScale(data, images[1], images[2], images[3], width, height, (i, v) -> out[i] = (byte) MathUtils.clip(v * 255 + .5f, 0, 255));
         return ByteBuffer.wrap(out);
     }
 
     private static ShortBuffer mgn(ShortBuffer buf, int width, int height) {
         int size = width * height;
-        float[] data = new float[size];
+        float[][] images = takeImages(size);
+        try {
+            return mgn(buf, width, height, images);
+        } finally {
+            putImages(images);
+        }
+    }
 
-        short[] array = buf.array(); // always backed by array
-        for (int i = 0; i < size; ++i)
-            data[i] = ((array[i] + 65536) & 0xFFFF) / 65535f;
+    private static ShortBuffer mgn(ShortBuffer buf, int width, int height, float[][] images) {
+        int size = width * height;
+        float[] data = images[0];
 
-        float[] image = multiScale(data, width, height);
+        short[] array = buf.hasArray() ? buf.array() : new short[size];
+        if (!buf.hasArray())
+            buf.get(0, array);
+        parallel(height, STRIPE, (from, to) -> {
+            for (int i = from * width; i < to * width; ++i)
+                data[i] = ((array[i] + 65536) & 0xFFFF) / 65535f;
+        });
 
         short[] out = new short[size];
-        for (int i = 0; i < size; ++i)
-            out[i] = (short) MathUtils.clip(image[i] * 65535 + .5f, 0, 65535);
+        multiScale(data, images[1], images[2], images[3], width, height, (i, v) -> out[i] = (short) MathUtils.clip(v * 65535 + .5f, 0, 65535));
         return ShortBuffer.wrap(out);
     }
 
@@ -0,0 +1,103 @@
+package org.helioviewer.jhv.imagedata;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinTask;
+
+// Levels of detail for the images without resolution levels of their own: each level halves the
+// previous one by averaging 2x2 blocks, the odd last row or column is averaged with itself
+public class ImagePyramid {
+
+    private static final int MIN_SIZE = 256; // no level is made smaller than this
+    private static final int STRIPE = 64; // rows per task
+
+    // number of levels below the full resolution
+    public static int numLevels(int width, int height) {
+        int n = 0;
+        while (Math.max(width, height) >> (n + 1) >= MIN_SIZE)
+            n++;
+        return n;
+    }
+
+    public static int levelSize(int size, int level) {
+        for (int i = 0; i < level; i++)
+            size = (size + 1) / 2;
+        return size;
+    }
+
+    // the coarsest level still at least as large as required, the same rule as for JPEG2000 resolution levels
+    public static int getLevel(int width, int height, int required) {
+        int maxLevel = numLevels(width, height);
+        for (int i = 1; i <= maxLevel; i++) {
+            if (levelSize(width, i) < required || levelSize(height, i) < required)
+                return i - 1;
+        }
+        return maxLevel;
+    }
+
+    static Buffer downsample(Buffer buffer, ImageBuffer.Format format, int width, int height) {
+        int w = (width + 1) / 2;
+        int h = (height + 1) / 2;
+
+        Buffer out;
+        Kernel kernel;
+        switch (format) {
+            case Gray8 -> {
+                ByteBuffer src = (ByteBuffer) buffer;
+                ByteBuffer dst = ByteBuffer.wrap(new byte[w * h]);
+                kernel = (x0, x1, y0, y1, o) -> dst.put(o, (byte) ((
+                        (src.get(x0 + y0) & 0xFF) + (src.get(x1 + y0) & 0xFF) +
+                                (src.get(x0 + y1) & 0xFF) + (src.get(x1 + y1) & 0xFF) + 2) >> 2));
+                out = dst;
+            }
+            case Gray16 -> {
+                ShortBuffer src = (ShortBuffer) buffer;
+                ShortBuffer dst = ShortBuffer.wrap(new short[w * h]);
+                kernel = (x0, x1, y0, y1, o) -> dst.put(o, (short) ((
+                        (src.get(x0 + y0) & 0xFFFF) + (src.get(x1 + y0) & 0xFFFF) +
+                                (src.get(x0 + y1) & 0xFFFF) + (src.get(x1 + y1) & 0xFFFF) + 2) >> 2));
+                out = dst;
+            }
+            default -> {
+                IntBuffer src = buffer instanceof ByteBuffer bb ? bb.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer() : (IntBuffer) buffer;
+                IntBuffer dst = IntBuffer.wrap(new int[w * h]);
+                kernel = (x0, x1, y0, y1, o) -> dst.put(o, average(src.get(x0 + y0), src.get(x1 + y0), src.get(x0 + y1), src.get(x1 + y1)));
+                out = dst;
+            }
+        }
+
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(h / STRIPE + 1);
+        for (int j = 0; j < h; j += STRIPE) {
+            int from = j, to = Math.min(h, j + STRIPE);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                for (int y = from; y < to; y++) {
+                    int y0 = 2 * y * width;
+                    int y1 = Math.min(2 * y + 1, height - 1) * width;
+                    for (int x = 0; x < w; x++)
+                        kernel.apply(2 * x, Math.min(2 * x + 1, width - 1), y0, y1, y * w + x);
+                }
+            }).fork());
+        }
+        tasks.forEach(ForkJoinTask::join);
+        return out;
+    }
+
+    private interface Kernel {
+        void apply(int x0, int x1, int y0, int y1, int out);
+    }
+
+    // per byte channel
+    private static int average(int a, int b, int c, int d) {
+        int r = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int sum = ((a >>> shift) & 0xFF) + ((b >>> shift) & 0xFF) + ((c >>> shift) & 0xFF) + ((d >>> shift) & 0xFF);
+            r |= ((sum + 2) >> 2) << shift;
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,238 @@
+package org.helioviewer.jhv.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.Nonnull;
+
+import org.helioviewer.jhv.JHVGlobals;
+import org.helioviewer.jhv.Log;
+import org.helioviewer.jhv.Settings;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+// Gzipped files are inflated once into the file cache, so that they can be read with random
+// access and memory mapped. The inflated files are held to the cache.inflate budget (MB), the
+// least recently used are deleted once no reader holds them. Files made of gzip members that record
+// their compressed size (BGZF) are inflated in parallel; the usual single member files, as
+// served by SOAR and SSW, are inflated in one go.
+public class InflateCache {
+
+    private static final int CHUNK = 64; // gzip members per task
+
+    private record Key(Path path, long length, long lastModified) {
+    }
+
+    private static final class Entry {
+
+        private final Path path;
+        private final boolean inflated;
+        private int pins;
+        private boolean evicted; // deleted when the last pin goes
+
+        Entry(Path _path, boolean _inflated) {
+            path = _path;
+            inflated = _inflated;
+        }
+
+        synchronized boolean pin() {
+            if (evicted)
+                return false;
+            pins++;
+            return true;
+        }
+
+        synchronized void unpin() {
+            if (--pins == 0 && evicted)
+                delete();
+        }
+
+        synchronized void evict() {
+            evicted = true;
+            if (pins == 0)
+                delete();
+        }
+
+        private void delete() {
+            if (inflated) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (Exception e) { // may be still mapped, deleted with the cache directory
+                    Log.warn(e);
+                }
+            }
+        }
+
+    }
+
+    // a file in use, the inflated copy is not deleted before close
+    public static final class Pinned implements AutoCloseable {
+
+        private final Entry entry;
+
+        private Pinned(Entry _entry) {
+            entry = _entry;
+        }
+
+        public File file() {
+            return entry.path.toFile();
+        }
+
+        @Override
+        public void close() {
+            entry.unpin();
+        }
+
+    }
+
+    private static final LoadingCache<Key, Entry> cache = Caffeine.newBuilder()
+            .maximumWeight(getBudget())
+            .weigher((Key key, Entry e) -> e.inflated ? (int) Math.min(Integer.MAX_VALUE, e.path.toFile().length() / 1024) : 0)
+            .removalListener((Key key, Entry e, RemovalCause cause) -> {
+                if (e != null)
+                    e.evict();
+            })
+            .build(InflateCache::load);
+
+    private static long getBudget() { // KB
+        try {
+            long mb = Long.parseLong(Settings.getProperty("cache.inflate"));
+            if (mb > 0)
+                return mb * 1024;
+        } catch (Exception ignore) {
+        }
+        return 4096 * 1024;
+    }
+
+    // the inflated copy of file, or file itself if not gzipped, held until closed
+    public static Pinned get(@Nonnull File file) throws IOException {
+        Key key = new Key(file.toPath(), file.length(), file.lastModified());
+        try {
+            while (true) {
+                Entry e = cache.get(key);
+                if (!e.pin()) // evicted meanwhile
+                    continue;
+                if (e.inflated && !Files.exists(e.path)) { // removed meanwhile
+                    e.unpin();
+                    cache.asMap().remove(key, e);
+                    continue;
+                }
+                return new Pinned(e);
+            }
+        } catch (Exception e) {
+            throw e.getCause() instanceof IOException ioe ? ioe : new IOException(e);
+        }
+    }
+
+    private static Entry load(Key key) throws IOException {
+        Path src = key.path;
+        if (!isGzip(src))
+            return new Entry(src, false);
+
+        Path tmp = Files.createTempFile(JHVGlobals.fileCacheDir.toPath(), "inflate", null);
+        try {
+            long start = System.nanoTime();
+            ArrayList<long[]> members = bgzfMembers(src);
+            if (members == null) {
+                try (InputStream is = new GZIPInputStream(Files.newInputStream(src), 256 * 1024)) {
+                    Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else
+                inflateMembers(src, tmp, members);
+            Log.info(String.format("Inflated %s in %dms%s", src, (System.nanoTime() - start) / 1000000, members == null ? "" : ", " + members.size() + " members"));
+            return new Entry(tmp, true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private static boolean isGzip(Path path) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return is.read() == 0x1f && is.read() == 0x8b;
+        }
+    }
+
+    // {offset, compressed size, inflated offset, inflated size} of each member, null unless all have the BGZF size field
+    private static ArrayList<long[]> bgzfMembers(Path path) throws IOException {
+        ArrayList<long[]> members = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size(), pos = 0, out = 0;
+            while (pos < size) {
+                header.clear();
+                if (ch.read(header, pos) < 18)
+                    return null;
+                // magic, deflate, FEXTRA, XLEN 6, subfield BC of 2 bytes
+                if (header.getShort(0) != (short) 0x8b1f || header.get(2) != 8 || (header.get(3) & 4) == 0 ||
+                        header.getShort(10) != 6 || header.get(12) != 'B' || header.get(13) != 'C' || header.getShort(14) != 2)
+                    return null;
+                long bsize = (header.getShort(16) & 0xFFFF) + 1;
+
+                trailer.clear();
+                if (pos + bsize > size || ch.read(trailer, pos + bsize - 4) < 4)
+                    return null;
+                long isize = trailer.getInt(0) & 0xFFFFFFFFL;
+
+                members.add(new long[]{pos, bsize, out, isize});
+                pos += bsize;
+                out += isize;
+            }
+        }
+        return members;
+    }
+
+    private static void inflateMembers(Path src, Path dst, ArrayList<long[]> members) throws IOException {
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dst, StandardOpenOption.WRITE)) {
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(members.size() / CHUNK + 1);
+            for (int i = 0; i < members.size(); i += CHUNK) {
+                int from = i, to = Math.min(members.size(), i + CHUNK);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int j = from; j < to; j++) {
+                        long[] m = members.get(j);
+                        ByteBuffer compressed = ByteBuffer.allocate((int) m[1]);
+                        while (compressed.hasRemaining()) {
+                            if (in.read(compressed, m[0] + compressed.position()) < 0)
+                                throw new EOFException();
+                        }
+                        byte[] inflated;
+                        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed.array()))) {
+                            inflated = is.readNBytes((int) m[3]);
+                        }
+                        if (inflated.length != m[3])
+                            throw new EOFException("Truncated gzip member");
+                        ByteBuffer buf = ByteBuffer.wrap(inflated);
+                        while (buf.hasRemaining())
+                            out.write(buf, m[2] + buf.position());
+                    }
+                    return null;
+                }).fork());
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                try {
+                    task.join();
+                } catch (RuntimeException e) {
+                    throw e.getCause() instanceof IOException ioe ? ioe : new IOException(e);
+                }
+            }
+        }
+    }
+
+}
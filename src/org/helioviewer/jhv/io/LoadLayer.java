@@ -3,7 +3,6 @@ package org.helioviewer.jhv.io;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
@@ -18,6 +17,7 @@ import org.helioviewer.jhv.view.DecodeExecutor;
 import org.helioviewer.jhv.view.ManyView;
 import org.helioviewer.jhv.view.View;
 import org.helioviewer.jhv.view.j2k.J2KView;
+import org.helioviewer.jhv.view.uri.URISeriesView;
 import org.helioviewer.jhv.view.uri.URIView;
 import org.helioviewer.jhv.threads.EventQueueCallbackExecutor;
 import org.helioviewer.jhv.threads.JHVThread;
@@ -48,8 +48,10 @@ public class LoadLayer {
         @Override
         public View call() throws Exception {
             DecodeExecutor executor = layer.getExecutor();
-            if (uriList.size() == 1) {
+            if (uriList.size() == 1 && URIView.URIType.of(uriList.get(0), forceFITS) != URIView.URIType.FITS) {
                 return loadView(executor, null, uriList.get(0), forceFITS);
+            } else if (uriList.stream().allMatch(uri -> URIView.URIType.of(uri, forceFITS) != null)) {
+                return new URISeriesView(executor, uriList, forceFITS); // decoded on demand, FITS may have several frames
             } else {
                 List<View> views = uriList.parallelStream().map(uri -> {
                     try {
@@ -90,14 +92,8 @@ public class LoadLayer {
     }
 
     private static View loadView(DecodeExecutor executor, APIRequest req, URI uri, boolean forceFITS) throws Exception {
-        String loc = uri.toString().toLowerCase(Locale.ENGLISH);
-        if (forceFITS || loc.endsWith(".fits") || loc.endsWith(".fts") || loc.endsWith(".fits.gz")) {
-            return new URIView(executor, req, uri, URIView.URIType.FITS);
-        } else if (loc.endsWith(".png") || loc.endsWith(".jpg") || loc.endsWith(".jpeg")) {
-            return new URIView(executor, req, uri, URIView.URIType.GENERIC);
-        } else {
-            return new J2KView(executor, req, uri);
-        }
+        URIView.URIType type = URIView.URIType.of(uri, forceFITS);
+        return type == null ? new J2KView(executor, req, uri) : new URIView(executor, req, uri, type);
     }
 
     private static URI requestAPI(String url) throws Exception {
@@ -6,6 +6,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URI;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 import okio.BufferedSource;
 
@@ -21,6 +24,11 @@ public interface NetClient extends AutoCloseable {
 
     long getContentLength();
 
+    int getCode();
+
+    @Nullable
+    String getHeader(String name);
+
     @Override
     void close() throws IOException;
 
@@ -37,10 +45,15 @@ public interface NetClient extends AutoCloseable {
     }
 
     static NetClient of(URI uri, boolean allowError, NetCache cache) throws IOException {
+        return of(uri, allowError, cache, Map.of());
+    }
+
+    // headers are added to the request, such as the validators of a conditional request
+    static NetClient of(URI uri, boolean allowError, NetCache cache, Map<String, String> headers) throws IOException {
         if (EventQueue.isDispatchThread())
             throw new IOException("Don't do that");
 
-        return "file".equals(uri.getScheme()) ? new NetClientLocal(uri) : new NetClientRemote(uri, allowError, cache);
+        return "file".equals(uri.getScheme()) ? new NetClientLocal(uri) : new NetClientRemote(uri, allowError, cache, headers);
     }
 
 }
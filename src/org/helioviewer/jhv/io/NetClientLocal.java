@@ -48,6 +48,16 @@ class NetClientLocal implements NetClient {
         return -1;
     }
 
+    @Override
+    public int getCode() {
+        return 200;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return null;
+    }
+
     @Override
     public void close() throws IOException {
         response.close();
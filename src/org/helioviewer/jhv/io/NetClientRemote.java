@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URI;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -16,6 +17,7 @@ import org.helioviewer.jhv.JHVGlobals;
 import okhttp3.Cache;
 import okhttp3.CacheControl;
 import okhttp3.Dispatcher;
+import okhttp3.Headers;
 import okhttp3.HttpUrl;
 //import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
@@ -50,8 +52,10 @@ class NetClientRemote implements NetClient {
 
     private final ResponseBody responseBody;
     private final boolean isSuccessful;
+    private final int code;
+    private final Headers headers;
 
-    NetClientRemote(URI uri, boolean allowError, NetCache cache) throws IOException {
+    NetClientRemote(URI uri, boolean allowError, NetCache cache, Map<String, String> requestHeaders) throws IOException {
         HttpUrl url = HttpUrl.get(uri);
         if (url == null)
             throw new IOException("Could not parse " + uri);
@@ -61,12 +65,15 @@ class NetClientRemote implements NetClient {
             builder.cacheControl(CacheControl.FORCE_NETWORK);
         else if (cache == NetCache.BYPASS)
             builder.cacheControl(noStore);
+        requestHeaders.forEach(builder::header);
         Request request = builder.build();
         //System.out.println(">>> " + url);
 
         Response response = client.newBuilder().build() // avoid spurious connection leaked messages for LMSAL
                 .newCall(request).execute();
         isSuccessful = response.isSuccessful();
+        code = response.code();
+        headers = response.headers();
         if (!allowError && !isSuccessful) {
             String msg = response.toString();
             response.close();
@@ -103,6 +110,16 @@ class NetClientRemote implements NetClient {
         return responseBody.contentLength();
     }
 
+    @Override
+    public int getCode() {
+        return code;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
     @Override
     public void close() {
         if (responseBody != null) {
@@ -151,7 +151,9 @@ public class ImageLayer extends AbstractLayer implements ImageDataHandler {
         view.setDataHandler(null);
         view.abolish();
 
-        imageData = prevImageData = baseImageData = null;
+        baseImageData = hold(baseImageData, null);
+        prevImageData = hold(prevImageData, null);
+        imageData = hold(imageData, null);
     }
 
     @Override
@@ -283,19 +285,36 @@ public class ImageLayer extends AbstractLayer implements ImageDataHandler {
     private ImageData prevImageData;
     private ImageData baseImageData;
 
+    // each slot holds a reference to the image buffer, so that pooled storage is recycled only when unused
+    @Nullable
+    private static ImageData hold(@Nullable ImageData old, @Nullable ImageData held) {
+        if (old != held) {
+            if (held != null)
+                held.getImageBuffer().retain();
+            if (old != null)
+                old.getImageBuffer().release();
+        }
+        return held;
+    }
+
     private void setImageData(@Nonnull ImageData newImageData) {
+        ImageData base = baseImageData;
+        ImageData prev = prevImageData;
+
         long newMilli = newImageData.getMetaData().getViewpoint().time.milli;
         if (newMilli == view.getFirstTime().milli) {
-            baseImageData = newImageData;
+            base = newImageData;
         }
 
-        if (imageData == null || baseImageData == newImageData) { // first or loop playback
-            prevImageData = newImageData;
+        if (imageData == null || base == newImageData) { // first or loop playback
+            prev = newImageData;
         } else if (newMilli != imageData.getMetaData().getViewpoint().time.milli) { // new frame
-            prevImageData = imageData;
+            prev = imageData;
         }
 
-        imageData = newImageData;
+        baseImageData = hold(baseImageData, base);
+        prevImageData = hold(prevImageData, prev);
+        imageData = hold(imageData, newImageData);
     }
 
     @Nullable
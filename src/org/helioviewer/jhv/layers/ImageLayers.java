@@ -11,8 +11,11 @@ import org.helioviewer.jhv.base.Region;
 import org.helioviewer.jhv.camera.Camera;
 import org.helioviewer.jhv.camera.CameraHelper;
 import org.helioviewer.jhv.display.Display;
+import org.helioviewer.jhv.display.Viewport;
 import org.helioviewer.jhv.imagedata.ImageData;
 import org.helioviewer.jhv.io.APIRequest;
+import org.helioviewer.jhv.math.Quat;
+import org.helioviewer.jhv.math.Vec2;
 import org.helioviewer.jhv.metadata.HelioviewerMetaData;
 import org.helioviewer.jhv.metadata.MetaData;
 import org.helioviewer.jhv.time.TimeUtils;
@@ -37,12 +40,47 @@ public class ImageLayers {
         Layers.forEachImageLayer(layer -> {
             int idx = layer.isVisibleIdx();
             if (idx != -1) {
-                double pixFactor = CameraHelper.getImagePixelFactor(camera, Display.getViewport(idx));
-                layer.getView().decode(viewpoint, pixFactor, factor);
+                Viewport vp = Display.getViewport(idx);
+                double pixFactor = CameraHelper.getImagePixelFactor(camera, vp);
+                layer.getView().decode(viewpoint, getVisibleArea(camera, vp), pixFactor, factor);
             }
         });
     }
 
+    // whether the images shown still cover what the camera sees, e.g. while panning
+    static boolean coverVisibleArea() {
+        Camera camera = Display.getCamera();
+        Position viewpoint = camera.getViewpoint();
+
+        for (ImageLayer layer : Layers.getImageLayers()) {
+            int idx = layer.isVisibleIdx();
+            if (idx != -1) {
+                Viewport vp = Display.getViewport(idx);
+                double pixFactor = CameraHelper.getImagePixelFactor(camera, vp);
+                if (!layer.getView().coversVisibleArea(viewpoint, getVisibleArea(camera, vp), pixFactor))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static final double MAX_DRAG_ANGLE = Math.toRadians(1);
+
+    // scene plane area seen in the viewport, as seen from the camera viewpoint;
+    // null when the projection or the drag rotation make it ill-defined
+    @Nullable
+    private static Region getVisibleArea(Camera camera, Viewport vp) {
+        if (Display.mode != Display.ProjectionMode.Orthographic)
+            return null;
+        if (Quat.angle(camera.getDragRotation(), Quat.ZERO) > MAX_DRAG_ANGLE)
+            return null;
+
+        double height = camera.getCameraWidth();
+        double width = height * vp.aspect;
+        Vec2 translation = camera.getTranslation();
+        return new Region(-0.5 * width - translation.x, -0.5 * height - translation.y, width, height);
+    }
+
     static void displaySynced(Position viewpoint) { // coalesce layers
         for (ImageLayer layer : Layers.getImageLayers()) {
             ImageData id;
@@ -269,6 +269,10 @@ public class Movie {
         timeRangeListeners.remove(listener);
     }
 
+    public static int getDesiredFPS() {
+        return 1000 / movieTimer.getDelay();
+    }
+
     public static void setDesiredRelativeSpeed(int fps) {
         for (ActionListener listener : movieTimer.getActionListeners())
             movieTimer.removeActionListener(listener);
@@ -291,6 +295,10 @@ public class Movie {
         advanceMode = mode;
     }
 
+    public static AdvanceMode getAdvanceMode() {
+        return advanceMode;
+    }
+
     private static boolean recording;
     private static boolean notDone;
 
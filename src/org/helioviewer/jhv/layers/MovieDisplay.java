@@ -17,6 +17,14 @@ public class MovieDisplay implements JHVEventListener.Highlight {
             display();
     }
 
+    // for camera drags, decodes only when the visible area leaves the decoded regions
+    public static void renderUncovered() {
+        if (ImageLayers.areEnabled() && !ImageLayers.coverVisibleArea())
+            ImageLayers.decode(1);
+        else
+            display();
+    }
+
     public static void display() {
         EventQueue.invokeLater(() -> JHVFrame.getGLCanvas().display()); // decouple from caller
     }
@@ -137,4 +137,10 @@ public class MathUtils {
         return r * Double.longBitsToDouble(tmp2);
     }
 
+    // the a for which pow(a, b) gives y, for 0 < b < 1
+    public static double powInverse(double y, double b) {
+        long tmp = Double.doubleToLongBits(y);
+        return Double.longBitsToDouble((long) ((tmp - 4606921280493453312L) / b) + 4606921280493453312L);
+    }
+
 }
@@ -144,6 +144,12 @@ public class Quat {
                 -q1.a * q2.u.y + q1.u.y * q2.a - q1.u.z * q2.u.x + q1.u.x * q2.u.z,
                 -q1.a * q2.u.z + q1.u.z * q2.a - q1.u.x * q2.u.y + q1.u.y * q2.u.x);
     }
+
+    // angle of the rotation taking q1 into q2, assumes unit quaternions
+    public static double angle(Quat q1, Quat q2) {
+        double dot = q1.a * q2.a + q1.u.x * q2.u.x + q1.u.y * q2.u.y + q1.u.z * q2.u.z;
+        return 2 * Math.acos(Math.min(1, Math.abs(dot)));
+    }
 /*
     public Quat slerp(Quat r, double t) {
         double cosAngle = dot(r);
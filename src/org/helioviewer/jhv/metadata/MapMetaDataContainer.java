@@ -0,0 +1,27 @@
+package org.helioviewer.jhv.metadata;
+
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+// Values kept from an earlier read of the XML metadata
+public class MapMetaDataContainer implements MetaDataContainer {
+
+    private final Map<String, String> values;
+
+    public MapMetaDataContainer(Map<String, String> _values) {
+        values = _values;
+    }
+
+    public HelioviewerMetaData getHVMetaData() {
+        return new HelioviewerMetaData(this);
+    }
+
+    @Nonnull
+    @Override
+    public Optional<String> getString(String key) {
+        return Optional.ofNullable(values.get(key));
+    }
+
+}
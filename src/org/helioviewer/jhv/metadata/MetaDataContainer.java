@@ -4,22 +4,35 @@ import java.util.Optional;
 
 import javax.annotation.Nonnull;
 
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Longs;
+
 interface MetaDataContainer {
 
     @Nonnull
     Optional<String> getString(String key);
 
     @Nonnull
-    Optional<Long> getLong(String key);
+    default Optional<Long> getLong(String key) {
+        return getString(key).map(Longs::tryParse);
+    }
 
     @Nonnull
-    Optional<Double> getDouble(String key);
+    default Optional<Double> getDouble(String key) {
+        return getString(key).map(Doubles::tryParse);
+    }
 
     @Nonnull
-    String getRequiredString(String key);
+    default String getRequiredString(String key) {
+        return getString(key).orElseThrow(() -> new RuntimeException(key + " not found in metadata"));
+    }
 
-    long getRequiredLong(String key);
+    default long getRequiredLong(String key) {
+        return getLong(key).orElseThrow(() -> new RuntimeException(key + " not found in metadata"));
+    }
 
-    double getRequiredDouble(String key);
+    default double getRequiredDouble(String key) {
+        return getDouble(key).orElseThrow(() -> new RuntimeException(key + " not found in metadata"));
+    }
 
 }
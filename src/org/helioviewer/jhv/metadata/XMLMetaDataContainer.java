@@ -1,77 +1,90 @@
 package org.helioviewer.jhv.metadata;
 
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
-import org.helioviewer.jhv.base.XMLUtils;
-
-import org.w3c.dom.CharacterData;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-
-import com.google.common.primitives.Doubles;
-import com.google.common.primitives.Longs;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
+// The elements inside the meta tag, read in a single streaming pass into a flat map: at any depth,
+// the first element of a name wins, its value is the text right after the start tag.
+// The names are shared between the frames.
 public class XMLMetaDataContainer implements MetaDataContainer {
 
-    private final Element meta;
+    // the factories are not guaranteed to be thread-safe, the frames are parsed in parallel
+    private static final ThreadLocal<XMLInputFactory> factory = ThreadLocal.withInitial(XMLMetaDataContainer::createFactory);
+    private static final Interner<String> names = Interners.newWeakInterner();
 
-    public XMLMetaDataContainer(String xml) throws Exception {
-        meta = (Element) XMLUtils.parse(xml).getElementsByTagName("meta").item(0);
-        if (meta == null)
-            throw new Exception("XML metadata without meta tag");
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory f = XMLInputFactory.newFactory();
+        f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        f.setProperty(XMLInputFactory.IS_COALESCING, true);
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return f;
     }
 
-    @Nullable
-    private String getValueFromXML(String key) {
-        Element line = (Element) meta.getElementsByTagName(key).item(0);
-        if (line == null)
-            return null;
+    private final HashMap<String, String> values = new HashMap<>();
 
-        Node child = line.getFirstChild();
-        if (child instanceof CharacterData)
-            return ((CharacterData) child).getData();
-        return null;
+    public XMLMetaDataContainer(String xml) throws Exception {
+        XMLStreamReader reader = factory.get().createXMLStreamReader(new StringReader(xml));
+        try {
+            int depth = 0; // inside meta
+            String pending = null; // element waiting for its text
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        String name = reader.getLocalName();
+                        if (depth > 0) {
+                            depth++;
+                            pending = values.containsKey(name) ? null : names.intern(name);
+                            if (pending != null)
+                                values.put(pending, null);
+                            continue;
+                        }
+                        if ("meta".equals(name))
+                            depth = 1;
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        if (depth > 0 && --depth == 0)
+                            return;
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (pending != null)
+                            values.put(pending, reader.getText());
+                    }
+                    default -> {
+                    }
+                }
+                pending = null;
+            }
+            if (depth == 0)
+                throw new Exception("XML metadata without meta tag");
+        } finally {
+            reader.close();
+        }
     }
 
     public HelioviewerMetaData getHVMetaData() {
         return new HelioviewerMetaData(this);
     }
 
-    @Nonnull
-    @Override
-    public Optional<String> getString(String key) {
-        return Optional.ofNullable(getValueFromXML(key));
-    }
-
-    @Nonnull
-    @Override
-    public Optional<Long> getLong(String key) {
-        return getString(key).map(Longs::tryParse);
-    }
-
-    @Nonnull
-    @Override
-    public Optional<Double> getDouble(String key) {
-        return getString(key).map(Doubles::tryParse);
+    // all the values, to be kept and given to MapMetaDataContainer
+    public Map<String, String> getValues() {
+        return Collections.unmodifiableMap(values);
     }
 
     @Nonnull
     @Override
-    public String getRequiredString(String key) {
-        return getString(key).orElseThrow(() -> new RuntimeException(key + " not found in metadata"));
-    }
-
-    @Override
-    public long getRequiredLong(String key) {
-        return getLong(key).orElseThrow(() -> new RuntimeException(key + " not found in metadata"));
-    }
-
-    @Override
-    public double getRequiredDouble(String key) {
-        return getDouble(key).orElseThrow(() -> new RuntimeException(key + " not found in metadata"));
+    public Optional<String> getString(String key) {
+        return Optional.ofNullable(values.get(key));
     }
 
 }
@@ -44,4 +44,8 @@ public class EventQueueCallbackExecutor extends ForwardingListeningExecutorServi
         return futureTask;
     }
 
+    public static <T> void addCallback(ListenableFuture<T> future, FutureCallback<T> callback) {
+        Futures.addCallback(future, callback, eventQueue);
+    }
+
 }
@@ -5,7 +5,6 @@ import java.awt.Component;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -14,7 +13,6 @@ import org.helioviewer.jhv.base.interval.Interval;
 import org.helioviewer.jhv.base.interval.RequestCache;
 import org.helioviewer.jhv.math.MathUtils;
 import org.helioviewer.jhv.opengl.GLInfo;
-import org.helioviewer.jhv.time.TimeUtils;
 import org.helioviewer.jhv.timelines.AbstractTimelineLayer;
 import org.helioviewer.jhv.timelines.draw.DrawConstants;
 import org.helioviewer.jhv.timelines.draw.DrawController;
@@ -34,7 +32,6 @@ public final class Band extends AbstractTimelineLayer {
     }
 
     private static final int SUPER_SAMPLE = 1; // 8 for dots
-    private static final int DOWNLOADER_MAX_DAYS_PER_BLOCK = 21;
 
     private final BandType bandType;
     private final BandCache bandCache;
@@ -43,7 +40,7 @@ public final class Band extends AbstractTimelineLayer {
 
     private final YAxis yAxis;
     private final int[] warnLevels;
-    private final List<GraphPolyline> graphPolylines = new ArrayList<>();
+    private final GraphPolylines graphPolylines = new GraphPolylines();
 
     private Color graphColor = BandColors.getNextColor();
     private PropagationModel propagationModel = new PropagationModelDelay(0);
@@ -172,7 +169,7 @@ public final class Band extends AbstractTimelineLayer {
             return;
 
         g.setColor(graphColor);
-        graphPolylines.forEach(line -> g.drawPolyline(line.xPoints(), line.yPoints(), line.length())); // polylines
+        graphPolylines.draw(g); // polylines
 
 //      for (GraphPolyline line : graphPolylines) { // dots
 //          int length = line.length();
@@ -198,22 +195,12 @@ public final class Band extends AbstractTimelineLayer {
                 warnLevels[i] = yAxis.value2pixel(graphArea.y, graphArea.height, unconvertedWarnLevels[i]);
             }
 
-            graphPolylines.clear();
-
             TimeAxis timeAxis = DrawController.selectedAxis;
             long start = propagationModel.getObservationTime(timeAxis.start());
             long end = propagationModel.getObservationTime(timeAxis.end());
-            for (List<DateValue> list : bandCache.getValues(SUPER_SAMPLE * GLInfo.pixelScale[0] * graphArea.width, start, end)) {
-                if (!list.isEmpty()) {
-                    IntArray dates = new IntArray(list.size());
-                    IntArray values = new IntArray(list.size());
-                    for (DateValue dv : list) {
-                        dates.put(timeAxis.value2pixel(graphArea.x, graphArea.width, propagationModel.getViewpointTime(dv.milli)));
-                        values.put(yAxis.value2pixel(graphArea.y, graphArea.height, dv.value));
-                    }
-                    graphPolylines.add(new GraphPolyline(dates, values));
-                }
-            }
+            graphPolylines.begin(graphArea, timeAxis, yAxis, propagationModel);
+            bandCache.getValues(SUPER_SAMPLE * GLInfo.pixelScale[0] * graphArea.width, start, end, graphPolylines);
+            graphPolylines.end();
         }
     }
 
@@ -237,16 +224,15 @@ public final class Band extends AbstractTimelineLayer {
     private void updateData(long start, long end) {
         List<Interval> missingIntervals = requestCache.getMissingIntervals(start, end);
         if (!missingIntervals.isEmpty()) {
-            // extend
-            start -= 7 * TimeUtils.DAY_IN_MILLIS;
-            end += 7 * TimeUtils.DAY_IN_MILLIS;
-
-            List<Interval> intervals = new ArrayList<>();
-            requestCache.adaptRequestCache(start, end).forEach(interval -> intervals.addAll(Interval.splitInterval(interval, DOWNLOADER_MAX_DAYS_PER_BLOCK)));
-            BandDataProvider.addDownloads(this, intervals);
+            // whole chunks, so that the chunks delivered are not requested again
+            BandDataProvider.addDownloads(this, requestCache.adaptRequestCache(BandDataProvider.chunkFloor(start), BandDataProvider.chunkCeil(end)));
         }
     }
 
+    void downloadFailed(long start, long end) {
+        requestCache.removeRequestedInterval(start, end);
+    }
+
     @Override
     public void fetchData(TimeAxis timeAxis) {
         long start = propagationModel.getObservationTime(timeAxis.start());
@@ -1,19 +1,24 @@
 package org.helioviewer.jhv.timelines.band;
 
-import java.util.List;
-
 import org.helioviewer.jhv.timelines.draw.YAxis;
 import org.json.JSONObject;
 
 interface BandCache {
 
+    // receives the samples of a range in time order, without objects per sample
+    interface Visitor {
+        void value(long milli, float value);
+
+        void gap(); // the line is broken
+    }
+
     boolean hasData();
 
     void addToCache(YAxis yAxis, float[] values, long[] dates);
 
     float[] getBounds(long start, long end);
 
-    List<List<DateValue>> getValues(double graphWidth, long start, long end);
+    void getValues(double graphWidth, long start, long end, Visitor visitor);
 
     float getValue(long ts);
 
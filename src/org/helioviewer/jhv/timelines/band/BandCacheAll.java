@@ -1,46 +1,136 @@
 package org.helioviewer.jhv.timelines.band;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 import org.helioviewer.jhv.timelines.draw.YAxis;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+// All the samples in two growing columns sorted by time. Incoming batches are sorted if needed and
+// merged in place from the end; ranges are found by binary search. For display, a range with more
+// samples than the graph has pixels is reduced to the min and max of each pixel-wide bin.
 class BandCacheAll implements BandCache {
 
-    private static final int MAX_SIZE = 86400;
+    private static final int MAX_SIZE = 1 << 26;
 
-    private final List<DateValue> dateVals = new ArrayList<>();
-    private boolean hasData;
-    private DateValue first;
-    private DateValue last;
+    private long[] dates = new long[1024];
+    private float[] values = new float[1024];
+    private int size;
 
     @Override
     public boolean hasData() {
-        return hasData;
+        return size > 0;
     }
 
     @Override
-    public void addToCache(YAxis yAxis, float[] values, long[] dates) {
-        int len = values.length;
-        if (len > 0) {
-            hasData = true;
+    public void addToCache(YAxis yAxis, float[] newValues, long[] newDates) {
+        int len = Math.min(newValues.length, MAX_SIZE - size);
+        if (len <= 0)
+            return;
+
+        long[] bDates = Arrays.copyOf(newDates, len);
+        float[] bValues = new float[len];
+        for (int i = 0; i < len; i++)
+            bValues[i] = yAxis.clip(newValues[i]);
+        sortBatch(bDates, bValues);
+
+        ensureCapacity(size + len);
+        if (size == 0 || dates[size - 1] <= bDates[0]) { // the usual case, appended in order
+            System.arraycopy(bDates, 0, dates, size, len);
+            System.arraycopy(bValues, 0, values, size, len);
+        } else { // merged from the end, the earlier samples first at equal times
+            int i = size - 1, j = len - 1, k = size + len - 1;
+            while (j >= 0) {
+                if (i >= 0 && dates[i] > bDates[j]) {
+                    dates[k] = dates[i];
+                    values[k--] = values[i--];
+                } else {
+                    dates[k] = bDates[j];
+                    values[k--] = bValues[j--];
+                }
+            }
         }
-        if (dateVals.size() >= MAX_SIZE) {
+        size += len;
+    }
+
+    private static void sortBatch(long[] bDates, float[] bValues) {
+        int len = bDates.length;
+        boolean sorted = true;
+        for (int i = 1; i < len && sorted; i++)
+            sorted = bDates[i - 1] <= bDates[i];
+        if (sorted)
             return;
+
+        // stable bottom-up merge sort of the (date, value) pairs, without boxing
+        long[] d = bDates, dTmp = new long[len];
+        float[] v = bValues, vTmp = new float[len];
+        for (int width = 1; width < len; width *= 2) {
+            for (int lo = 0; lo < len; lo += 2 * width) {
+                int mid = Math.min(lo + width, len), hi = Math.min(lo + 2 * width, len);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    if (d[j] < d[i]) {
+                        dTmp[k] = d[j];
+                        vTmp[k++] = v[j++];
+                    } else {
+                        dTmp[k] = d[i];
+                        vTmp[k++] = v[i++];
+                    }
+                }
+                for (; i < mid; i++, k++) {
+                    dTmp[k] = d[i];
+                    vTmp[k] = v[i];
+                }
+                for (; j < hi; j++, k++) {
+                    dTmp[k] = d[j];
+                    vTmp[k] = v[j];
+                }
+            }
+            long[] dSwap = d;
+            d = dTmp;
+            dTmp = dSwap;
+            float[] vSwap = v;
+            v = vTmp;
+            vTmp = vSwap;
+        }
+        if (d != bDates) {
+            System.arraycopy(d, 0, bDates, 0, len);
+            System.arraycopy(v, 0, bValues, 0, len);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > dates.length) {
+            int newCapacity = (int) Math.min(MAX_SIZE, Math.max(capacity, dates.length * 3L / 2));
+            dates = Arrays.copyOf(dates, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
         }
+    }
 
-        for (int i = 0; i < len; i++) {
-            if (dateVals.size() >= MAX_SIZE)
-                break;
-            dateVals.add(new DateValue(dates[i], yAxis.clip(values[i])));
+    // first index with a date not before ts
+    private int lowerBound(long ts) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates[mid] < ts)
+                low = mid + 1;
+            else
+                high = mid;
         }
-        Collections.sort(dateVals);
+        return low;
+    }
 
-        first = dateVals.get(0);
-        last = dateVals.get(dateVals.size() - 1);
+    // first index with a date after ts
+    private int upperBound(long ts) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates[mid] <= ts)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
     }
 
     @Override
@@ -48,51 +138,69 @@ class BandCacheAll implements BandCache {
         float min = Float.POSITIVE_INFINITY;
         float max = Float.NEGATIVE_INFINITY;
 
-        for (DateValue dv : dateVals) {
-            if (dv.value != YAxis.BLANK && start <= dv.milli && dv.milli <= end) {
-                min = Math.min(dv.value, min);
-                max = Math.max(dv.value, max);
+        for (int i = lowerBound(start), to = upperBound(end); i < to; i++) {
+            float value = values[i];
+            if (value != YAxis.BLANK) {
+                min = Math.min(value, min);
+                max = Math.max(value, max);
             }
         }
         return new float[]{min, max};
     }
 
     @Override
-    public List<List<DateValue>> getValues(double graphWidth, long start, long end) {
-        List<List<DateValue>> ret = new ArrayList<>();
-        List<DateValue> list = new ArrayList<>();
-        for (DateValue dv : dateVals) {
-            if (dv.value == YAxis.BLANK) {
-                ret.add(list);
-                list = new ArrayList<>();
-            } else if (start <= dv.milli && dv.milli <= end) {
-                list.add(dv);
+    public void getValues(double graphWidth, long start, long end, Visitor visitor) {
+        // one sample beyond each side, so that the lines reach the edges
+        int from = Math.max(0, lowerBound(start) - 1);
+        int to = Math.min(size, upperBound(end) + 1);
+        int bins = (int) Math.max(1, graphWidth);
+        if (to - from <= 2 * bins) {
+            for (int i = from; i < to; i++) {
+                float value = values[i];
+                if (value == YAxis.BLANK)
+                    visitor.gap();
+                else
+                    visitor.value(dates[i], value);
+            }
+        } else { // the envelope of each bin, at the time of its first sample
+            double binMillis = Math.max(1, (end - start) / (double) bins);
+            int i = from;
+            while (i < to) {
+                long date = dates[i];
+                long binEnd = Math.max(date + 1, start + (long) Math.ceil((Math.floor((date - start) / binMillis) + 1) * binMillis));
+                float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+                for (; i < to && dates[i] < binEnd; i++) {
+                    float value = values[i];
+                    if (value == YAxis.BLANK) {
+                        i++;
+                        break;
+                    }
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                if (min <= max) {
+                    visitor.value(date, min);
+                    if (max != min)
+                        visitor.value(date, max);
+                }
+                if (i > 0 && values[i - 1] == YAxis.BLANK)
+                    visitor.gap();
             }
         }
-        ret.add(list);
-        return ret;
     }
 
     @Override
     public float getValue(long ts) {
-        if (ts < first.milli || ts > last.milli)
+        if (size == 0 || ts < dates[0] || ts > dates[size - 1])
             return YAxis.BLANK;
-        int low = 0, high = dateVals.size();
-        while (low != high) {
-            int mid = (low + high) / 2;
-            if (dateVals.get(mid).milli <= ts) {
-                low = mid + 1;
-            } else {
-                high = mid;
-            }
-        }
-        return dateVals.get(high).value;
+        return values[Math.min(size - 1, upperBound(ts))];
     }
 
     @Override
     public void serialize(JSONObject jo, double f) {
         JSONArray ja = new JSONArray();
-        dateVals.forEach(dv -> dv.serialize(ja, f));
+        for (int i = 0; i < size; i++)
+            ja.put(new JSONArray().put(dates[i] / 1000L).put(values[i] * f));
         jo.put("data", ja);
     }
 
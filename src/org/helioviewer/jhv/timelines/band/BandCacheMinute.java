@@ -1,10 +1,9 @@
 package org.helioviewer.jhv.timelines.band;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 
+import org.helioviewer.jhv.math.MathUtils;
 import org.helioviewer.jhv.time.TimeUtils;
 import org.helioviewer.jhv.timelines.draw.YAxis;
 import org.json.JSONArray;
@@ -45,37 +44,30 @@ class BandCacheMinute implements BandCache {
             DataChunk cache = cacheMap.computeIfAbsent(key, DataChunk::new);
             cache.setValue(max, (int) ((dates[i] % MILLIS_PER_CHUNK) / MILLIS_PER_TICK), yAxis.clip(values[i]));
         }
+        cacheMap.values().forEach(DataChunk::updateEnvelope);
     }
 
     @Override
     public float[] getBounds(long start, long end) {
-        float min = Float.POSITIVE_INFINITY;
-        float max = Float.NEGATIVE_INFINITY;
+        float[] bounds = {Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
 
         long key = date2key(start);
         long keyEnd = date2key(end);
         while (key <= keyEnd) {
             DataChunk cache = cacheMap.get(key);
-            key++;
-            if (cache == null) {
-                continue;
-            }
-            float[] values = cache.getValues(0);
-            long[] dates = cache.getDates(0);
-
-            for (int i = 0; i < values.length; i++) {
-                float value = values[i];
-                if (value != YAxis.BLANK && start <= dates[i] && dates[i] <= end /* ? */) {
-                    min = Math.min(value, min);
-                    max = Math.max(value, max);
-                }
+            if (cache != null) {
+                long chunkStart = key * MILLIS_PER_CHUNK;
+                int from = (int) MathUtils.clip(-Math.floorDiv(chunkStart - start, MILLIS_PER_TICK), 0, CHUNKED_SIZE);
+                int to = (int) MathUtils.clip(Math.floorDiv(end - chunkStart, MILLIS_PER_TICK) + 1, 0, CHUNKED_SIZE);
+                cache.envelope(from, to, bounds);
             }
+            key++;
         }
-        return new float[]{min, max};
+        return bounds;
     }
 
     @Override
-    public List<List<DateValue>> getValues(double graphWidth, long start, long end) {
+    public void getValues(double graphWidth, long start, long end, Visitor visitor) {
         int level = 0;
         double factor = 1;
         double elsz = 1. * MILLIS_PER_CHUNK / CHUNKED_SIZE * factor;
@@ -89,47 +81,56 @@ class BandCacheMinute implements BandCache {
             noelements = aWidth / elsz;
         }
 
-        List<List<DateValue>> ret = new ArrayList<>();
-        List<DateValue> list = new ArrayList<>();
-
+        long binMillis = MILLIS_PER_TICK << level;
         long key = date2key(start);
         long keyEnd = date2key(end);
         while (key <= keyEnd) {
             DataChunk cache = cacheMap.get(key);
-            key++;
             if (cache == null) {
+                key++;
                 continue;
             }
-            float[] values = cache.getValues(level);
-            long[] dates = cache.getDates(level);
-            int i = 0;
-            while (i < values.length) {
-                float value = values[i];
-                if (value == YAxis.BLANK) {
-                    ret.add(list);
-                    list = new ArrayList<>();
-                } else {
-                    list.add(new DateValue(dates[i], value));
+            long chunkStart = key * MILLIS_PER_CHUNK;
+            key++;
+
+            // one bin beyond each side, so that the lines reach the edges
+            int size = DataChunk.size(level);
+            int from = (int) MathUtils.clip(Math.floorDiv(start - chunkStart, binMillis) - 1, 0, size);
+            int to = (int) MathUtils.clip(Math.floorDiv(end - chunkStart, binMillis) + 2, 0, size);
+            if (level == 0) {
+                float[] values = cache.values;
+                for (int i = from; i < to; i++) {
+                    float value = values[i];
+                    if (value == YAxis.BLANK) {
+                        visitor.gap();
+                    } else {
+                        visitor.value(chunkStart + i * binMillis, value);
+                    }
+                }
+            } else { // the envelope of each bin as a vertical stroke, the spikes are kept
+                float[] min = cache.min[level];
+                float[] max = cache.max[level];
+                for (int i = from; i < to; i++) {
+                    if (min[i] > max[i]) { // empty
+                        visitor.gap();
+                    } else {
+                        long date = chunkStart + i * binMillis;
+                        visitor.value(date, min[i]);
+                        if (max[i] != min[i])
+                            visitor.value(date, max[i]);
+                    }
                 }
-                i++;
             }
         }
-        ret.add(list);
-        return ret;
     }
 
     @Override
     public float getValue(long ts) {
-        long key = date2key(ts);
-        DataChunk cache = cacheMap.get(key);
+        DataChunk cache = cacheMap.get(date2key(ts));
         if (cache != null) {
-            long[] dates = cache.getDates(0);
-            int len = dates.length;
-            int idx = (int) ((len - 1) * 1. * (ts - dates[0]) / (dates[len - 1] - dates[0]) + 0.5);
-
-            if (idx >= 0 && idx < len) {
-                return cache.getValues(0)[idx];
-            }
+            int idx = (int) ((ts - cache.start) / (double) MILLIS_PER_TICK + 0.5); // nearest
+            if (idx < CHUNKED_SIZE)
+                return cache.values[idx];
         }
         return YAxis.BLANK;
     }
@@ -141,58 +142,103 @@ class BandCacheMinute implements BandCache {
         jo.put("data", ja);
     }
 
+    // The values at full resolution, the times follow from the start of the chunk and the index.
+    // The coarser levels keep the envelope of the values in each bin, recomputed from the values over
+    // the range written by each batch, as values may be overwritten; an empty bin has min > max.
     private static class DataChunk {
 
-        private final float[][] values = new float[MAX_LEVEL][];
-        private final long[][] dates = new long[MAX_LEVEL][];
+        private final long start;
+        private final float[] values = new float[(int) CHUNKED_SIZE];
+        private final float[][] min = new float[MAX_LEVEL][];
+        private final float[][] max = new float[MAX_LEVEL][];
+        private int dirtyFrom = Integer.MAX_VALUE;
+        private int dirtyTo;
 
         DataChunk(long key) {
-            int factor = 1;
-            for (int i = 0; i < MAX_LEVEL; i++) {
-                values[i] = new float[(int) CHUNKED_SIZE / factor];
-                Arrays.fill(values[i], YAxis.BLANK);
-                dates[i] = new long[(int) CHUNKED_SIZE / factor];
-                factor *= FACTOR_STEP;
+            start = key * MILLIS_PER_CHUNK;
+            Arrays.fill(values, YAxis.BLANK);
+            for (int i = 1; i < MAX_LEVEL; i++) {
+                min[i] = new float[size(i)];
+                max[i] = new float[size(i)];
+                Arrays.fill(min[i], Float.POSITIVE_INFINITY);
+                Arrays.fill(max[i], Float.NEGATIVE_INFINITY);
             }
+        }
 
-            long startdate = key * MILLIS_PER_CHUNK;
-            factor = 1;
-            for (int j = 0; j < values.length; j++) {
-                for (int i = 0; i < values[j].length; i++) {
-                    dates[j][i] = startdate + i * MILLIS_PER_TICK * factor;
-                }
-                factor *= FACTOR_STEP;
-            }
+        static int size(int level) {
+            return (int) ((CHUNKED_SIZE + (1L << level) - 1) >> level);
         }
 
-        void setValue(boolean max, int minuteOfDay, float value) {
-            int factor = 1;
-            for (int i = 0; i < values.length; i++) {
-                //if (values[i].length == 0) -- if ever MILLIS_PER_TICK > 5min
-                //    continue;
-                int idx = minuteOfDay / factor;
-                if (idx >= values[i].length) {
-                    idx = values[i].length - 1;
+        void setValue(boolean preferMax, int minuteOfChunk, float value) {
+            values[minuteOfChunk] = preferMax ? Math.max(values[minuteOfChunk], value) : value;
+            dirtyFrom = Math.min(dirtyFrom, minuteOfChunk);
+            dirtyTo = Math.max(dirtyTo, minuteOfChunk + 1);
+        }
+
+        void updateEnvelope() {
+            if (dirtyFrom >= dirtyTo)
+                return;
+
+            int from = dirtyFrom >> 1, to = ((dirtyTo - 1) >> 1) + 1;
+            for (int i = from; i < to; i++) {
+                float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+                for (int j = 2 * i; j < Math.min(2 * i + 2, values.length); j++) {
+                    float value = values[j];
+                    if (value != YAxis.BLANK) {
+                        lo = Math.min(lo, value);
+                        hi = Math.max(hi, value);
+                    }
                 }
-                values[i][idx] = max ? Math.max(values[i][idx], value) : value;
-                factor *= FACTOR_STEP;
+                min[1][i] = lo;
+                max[1][i] = hi;
             }
-
+            for (int level = 2; level < MAX_LEVEL; level++) {
+                from >>= 1;
+                to = ((to - 1) >> 1) + 1;
+                int below = size(level - 1);
+                for (int i = from; i < to; i++) {
+                    int j = 2 * i;
+                    min[level][i] = j + 1 < below ? Math.min(min[level - 1][j], min[level - 1][j + 1]) : min[level - 1][j];
+                    max[level][i] = j + 1 < below ? Math.max(max[level - 1][j], max[level - 1][j + 1]) : max[level - 1][j];
+                }
+            }
+            dirtyFrom = Integer.MAX_VALUE;
+            dirtyTo = 0;
         }
 
-        float[] getValues(int level) {
-            return values[level];
+        // bounds of the values from..to at full resolution, from the coarsest bins that fit
+        void envelope(int from, int to, float[] bounds) {
+            for (int level = 0; from < to; level++) {
+                if (level == MAX_LEVEL - 1) {
+                    for (int i = from; i < to; i++)
+                        addBin(level, i, bounds);
+                    return;
+                }
+                if ((from & 1) != 0)
+                    addBin(level, from++, bounds);
+                if ((to & 1) != 0)
+                    addBin(level, --to, bounds);
+                from >>= 1;
+                to >>= 1;
+            }
         }
 
-        long[] getDates(int level) {
-            return dates[level];
+        private void addBin(int level, int i, float[] bounds) {
+            if (level == 0) {
+                float value = values[i];
+                if (value != YAxis.BLANK) {
+                    bounds[0] = Math.min(bounds[0], value);
+                    bounds[1] = Math.max(bounds[1], value);
+                }
+            } else {
+                bounds[0] = Math.min(bounds[0], min[level][i]);
+                bounds[1] = Math.max(bounds[1], max[level][i]);
+            }
         }
 
         void serialize(JSONArray ja, double f) {
-            long[] d = dates[0];
-            float[] v = values[0];
-            for (int i = 0; i < v.length; i++)
-                ja.put(new JSONArray().put(d[i] / 1000L).put(f * v[i]));
+            for (int i = 0; i < values.length; i++)
+                ja.put(new JSONArray().put((start + i * MILLIS_PER_TICK) / 1000L).put(f * values[i]));
         }
 
     }
@@ -0,0 +1,8 @@
+package org.helioviewer.jhv.timelines.band;
+
+import javax.annotation.Nullable;
+
+// The samples of a band over one chunk of time as received, with the validators of the response
+// and the time it was last known to be current
+record BandChunk(long checked, @Nullable String etag, @Nullable String lastModified, long[] dates, float[] values) {
+}
@@ -0,0 +1,99 @@
+package org.helioviewer.jhv.timelines.band;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+
+// The dates as variable length differences from the previous one, mostly one or two bytes for
+// regular cadences, followed by the values as floats
+class BandChunkSerializer implements Serializer<BandChunk> {
+
+    private static final int VERSION = 1;
+
+    @Override
+    public ByteBuffer serialize(BandChunk chunk) {
+        int len = chunk.dates().length;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 6 * len);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(chunk.checked());
+            out.writeUTF(chunk.etag() == null ? "" : chunk.etag());
+            out.writeUTF(chunk.lastModified() == null ? "" : chunk.lastModified());
+
+            out.writeInt(len);
+            long prev = 0;
+            for (long date : chunk.dates()) {
+                writeVarLong(out, date - prev);
+                prev = date;
+            }
+            for (float value : chunk.values())
+                out.writeFloat(value);
+        } catch (IOException e) {
+            throw new SerializerException(e);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    @Override
+    public BandChunk read(ByteBuffer binary) {
+        byte[] array = new byte[binary.remaining()];
+        binary.get(array);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(array))) {
+            if (in.readByte() != VERSION)
+                throw new SerializerException("Unknown band chunk version");
+            long checked = in.readLong();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+
+            int len = in.readInt();
+            long[] dates = new long[len];
+            long prev = 0;
+            for (int i = 0; i < len; i++)
+                dates[i] = prev += readVarLong(in);
+            float[] values = new float[len];
+            for (int i = 0; i < len; i++)
+                values[i] = in.readFloat();
+            return new BandChunk(checked, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, dates, values);
+        } catch (IOException e) {
+            throw new SerializerException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(BandChunk chunk, ByteBuffer binary) {
+        BandChunk other = read(binary);
+        return chunk.checked() == other.checked() &&
+                Objects.equals(chunk.etag(), other.etag()) && Objects.equals(chunk.lastModified(), other.lastModified()) &&
+                Arrays.equals(chunk.dates(), other.dates()) && Arrays.equals(chunk.values(), other.values());
+    }
+
+    // zigzag, 7 bits per byte
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        v = (v << 1) ^ (v >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return (v >>> 1) ^ -(v & 1);
+        }
+        throw new IOException("Malformed variable length value");
+    }
+
+}
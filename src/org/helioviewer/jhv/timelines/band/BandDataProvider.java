@@ -1,8 +1,14 @@
 package org.helioviewer.jhv.timelines.band;
 
+import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
@@ -10,6 +16,7 @@ import javax.annotation.Nonnull;
 import org.helioviewer.jhv.Log;
 import org.helioviewer.jhv.base.interval.Interval;
 import org.helioviewer.jhv.io.JSONUtils;
+import org.helioviewer.jhv.io.NetClient;
 import org.helioviewer.jhv.threads.EventQueueCallbackExecutor;
 import org.helioviewer.jhv.time.TimeUtils;
 import org.helioviewer.jhv.timelines.Timelines;
@@ -22,6 +29,13 @@ import com.google.common.util.concurrent.FutureCallback;
 
 public class BandDataProvider {
 
+    // downloads are made of chunks aligned to whole weeks since the epoch, so that they can be kept
+    private static final long CHUNK_MILLIS = 7 * TimeUtils.DAY_IN_MILLIS;
+    // how long a kept chunk is used without asking the server, shorter for the recent data still coming in
+    private static final long RECENT_MILLIS = 2 * TimeUtils.DAY_IN_MILLIS;
+    private static final long RECENT_STALE_MILLIS = 10 * TimeUtils.MINUTE_IN_MILLIS;
+    private static final long STALE_MILLIS = 7 * TimeUtils.DAY_IN_MILLIS;
+
     private static final ArrayListMultimap<Band, Future<BandResponse>> workerMap = ArrayListMultimap.create();
 
     public static void loadBandTypes() {
@@ -32,12 +46,28 @@ public class BandDataProvider {
         EventQueueCallbackExecutor.pool.submit(new BandLoad(jo), new BandLoadCallback());
     }
 
+    // the start of the chunk holding time
+    static long chunkFloor(long time) {
+        return Math.floorDiv(time, CHUNK_MILLIS) * CHUNK_MILLIS;
+    }
+
+    // the end of the chunk holding time - 1
+    static long chunkCeil(long time) {
+        return -Math.floorDiv(-time, CHUNK_MILLIS) * CHUNK_MILLIS;
+    }
+
+    // the intervals are expected on chunk boundaries
     static void addDownloads(Band band, List<Interval> intervals) {
         if ("".equals(band.getBandType().getBaseURL()))
             return;
+        TreeSet<Long> chunks = new TreeSet<>();
         for (Interval interval : intervals) {
+            for (long start = chunkFloor(interval.start); start < interval.end; start += CHUNK_MILLIS)
+                chunks.add(start);
+        }
+        for (long start : chunks) {
             Future<BandResponse> worker = EventQueueCallbackExecutor.pool.submit(
-                    new BandDownload(band, interval.start, interval.end), new BandDownloadCallback(band));
+                    new BandDownload(band, start, start + CHUNK_MILLIS), new BandDownloadCallback(band, start, start + CHUNK_MILLIS));
             workerMap.put(band, worker);
         }
     }
@@ -63,16 +93,82 @@ public class BandDataProvider {
 
         @Override
         public BandResponse call() throws Exception {
-            BandType type = band.getBandType();
-            URI uri = new URI(type.getBaseURL() + "&timeline=" + type.getName() +
-                    "&start_date=" + TimeUtils.formatDate(startTime) +
-                    "&end_date=" + TimeUtils.formatDate(endTime));
-            return new BandResponse(JSONUtils.getUncached(uri));
+            return download(band.getBandType(), startTime, endTime);
+        }
+
+    }
+
+    // also the key of the chunk in the disk cache
+    static URI chunkURI(BandType type, long startTime, long endTime) throws URISyntaxException {
+        return new URI(type.getBaseURL() + "&timeline=" + type.getName() +
+                "&start_date=" + TimeUtils.formatDate(startTime) +
+                "&end_date=" + TimeUtils.formatDate(endTime));
+    }
+
+    // the samples of a chunk, from the disk cache while fresh, else from the server, or from the disk
+    // cache again if the server cannot be reached
+    static BandResponse download(BandType type, long startTime, long endTime) throws Exception {
+        URI uri = chunkURI(type, startTime, endTime);
+        String key = uri.toString();
+
+        long now = System.currentTimeMillis();
+        BandChunk chunk = BandDiskCache.get(key);
+        if (chunk != null && now - chunk.checked() < (endTime > now - RECENT_MILLIS ? RECENT_STALE_MILLIS : STALE_MILLIS))
+            return new BandResponse(type.getName(), null, chunk.dates(), chunk.values());
+
+        try {
+            chunk = fetch(type, uri, chunk, now, startTime, endTime);
+        } catch (IOException e) {
+            if (chunk == null)
+                throw e;
+            Log.warn("Using the kept data: " + uri, e); // offline
+        }
+        BandDiskCache.put(key, chunk);
+        return new BandResponse(type.getName(), null, chunk.dates(), chunk.values());
+    }
+
+    // a conditional request if kept
+    private static BandChunk fetch(BandType type, URI uri, BandChunk kept, long now, long startTime, long endTime) throws IOException {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept", BandParser.BINARY_TYPE + ", application/json;q=0.9");
+        if (kept != null) {
+            if (kept.etag() != null)
+                headers.put("If-None-Match", kept.etag());
+            if (kept.lastModified() != null)
+                headers.put("If-Modified-Since", kept.lastModified());
         }
 
+        try (NetClient nc = NetClient.of(uri, true, NetClient.NetCache.BYPASS, headers)) {
+            if (kept != null && nc.getCode() == 304)
+                return new BandChunk(now, kept.etag(), kept.lastModified(), kept.dates(), kept.values());
+            if (!nc.isSuccessful())
+                throw new IOException("HTTP " + nc.getCode() + ": " + uri);
+
+            String contentType = nc.getHeader("Content-Type");
+            BandResponse response = contentType != null && contentType.startsWith(BandParser.BINARY_TYPE) ?
+                    BandParser.binary(nc.getSource()) : BandParser.json(nc.getReader());
+            if (!response.bandName.equals(type.getName()))
+                throw new IOException("Expected " + type.getName() + ", got " + response.bandName);
+            return clip(new BandChunk(now, nc.getHeader("ETag"), nc.getHeader("Last-Modified"), response.dates, response.values), startTime, endTime);
+        }
     }
 
-    private record BandDownloadCallback(Band band) implements FutureCallback<BandResponse> {
+    // the end date may be served inclusively, the samples of the next chunk are left to it
+    private static BandChunk clip(BandChunk chunk, long startTime, long endTime) {
+        long[] dates = chunk.dates();
+        float[] values = chunk.values();
+        int n = 0;
+        for (int i = 0; i < dates.length; i++) {
+            if (dates[i] >= startTime && dates[i] < endTime) {
+                dates[n] = dates[i];
+                values[n++] = values[i];
+            }
+        }
+        return n == dates.length ? chunk :
+                new BandChunk(chunk.checked(), chunk.etag(), chunk.lastModified(), Arrays.copyOf(dates, n), Arrays.copyOf(values, n));
+    }
+
+    private record BandDownloadCallback(Band band, long startTime, long endTime) implements FutureCallback<BandResponse> {
 
         @Override
         public void onSuccess(BandResponse result) {
@@ -84,7 +180,9 @@ public class BandDataProvider {
 
         @Override
         public void onFailure(@Nonnull Throwable t) {
-            Log.error(t);
+            band.downloadFailed(startTime, endTime); // to be requested again
+            if (!(t instanceof CancellationException))
+                Log.error(t);
         }
 
     }
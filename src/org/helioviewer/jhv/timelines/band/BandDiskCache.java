@@ -0,0 +1,120 @@
+package org.helioviewer.jhv.timelines.band;
+
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.helioviewer.jhv.JHVDirectory;
+import org.helioviewer.jhv.Log;
+import org.helioviewer.jhv.Settings;
+import org.helioviewer.jhv.io.FileUtils;
+
+import org.ehcache.Cache;
+import org.ehcache.PersistentCacheManager;
+import org.ehcache.Status;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+
+// The downloaded band chunks, kept across restarts up to cache.bands MB on disk; the disk store
+// evicts the least recently used. There is no heap tier, the chunks read are held by the bands
+// themselves. The entries do not expire, they are revalidated with the server when stale and
+// used as they are when it cannot be reached.
+public class BandDiskCache {
+
+    static {
+        Logger.getLogger("org.ehcache").setLevel(Level.WARNING); // shutup Ehcache info logs
+    }
+
+    private static Path cacheDir = Path.of(JHVDirectory.CACHE.getPath(), "Bands-1");
+
+    private static PersistentCacheManager manager;
+    private static Cache<String, BandChunk> cache;
+    private static Thread hook;
+
+    public static void init() {
+        init(cacheDir);
+    }
+
+    // also for tests, away from the user cache
+    static void init(Path dir) {
+        cacheDir = dir;
+        manager = CacheManagerBuilder.newCacheManagerBuilder()
+                .with(CacheManagerBuilder.persistence(cacheDir.toString()))
+                .withCache("Bands", CacheConfigurationBuilder
+                        .newCacheConfigurationBuilder(String.class, BandChunk.class,
+                                ResourcePoolsBuilder.newResourcePoolsBuilder()
+                                        .disk(getBudget(), MemoryUnit.MB, true))
+                        .withValueSerializer(new BandChunkSerializer()))
+                .build(true);
+        cache = manager.getCache("Bands", String.class, BandChunk.class);
+
+        if (hook == null) {
+            hook = new Thread(BandDiskCache::close);
+            Runtime.getRuntime().addShutdownHook(hook);
+        }
+    }
+
+    private static long getBudget() { // MB
+        try {
+            long mb = Long.parseLong(Settings.getProperty("cache.bands"));
+            if (mb > 0)
+                return mb;
+        } catch (Exception ignore) {
+        }
+        return 256;
+    }
+
+    @Nullable
+    static BandChunk get(@Nonnull String key) {
+        try {
+            return cache == null ? null : cache.get(key);
+        } catch (Exception e) { // might get interrupted
+            Log.error(e);
+        }
+        return null;
+    }
+
+    static void put(@Nonnull String key, @Nonnull BandChunk chunk) {
+        try {
+            if (cache != null)
+                cache.put(key, chunk);
+        } catch (Exception e) {
+            Log.error(e);
+        }
+    }
+
+    static void close() {
+        try {
+            if (manager != null && manager.getStatus() == Status.AVAILABLE) // also from the hook
+                manager.close();
+        } catch (Exception e) {
+            Log.error(e);
+        }
+    }
+
+    public static void clear() {
+        close();
+        try {
+            if (manager != null)
+                manager.destroy();
+        } catch (Exception e) {
+            Log.error(e);
+        }
+        init();
+    }
+
+    public static long getSize() {
+        try {
+            return FileUtils.diskUsage(cacheDir);
+        } catch (Exception e) {
+            Log.error(e);
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,372 @@
+package org.helioviewer.jhv.timelines.band;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import okio.BufferedSource;
+
+// Band responses read without building a document. The binary format, all little-endian:
+// "JHVB", version byte, int name length, UTF-8 name, double multiplier, int n,
+// n long times in milliseconds, each as the difference from the previous one, then n float values.
+// The JSON is scanned in one pass: the pairs of the data array go straight into columns and the
+// other members are skipped or, for the band type, parsed on their own.
+class BandParser {
+
+    static final String BINARY_TYPE = "application/vnd.jhv.band";
+
+    private static final int MAGIC = 'J' | 'H' << 8 | 'V' << 16 | 'B' << 24;
+    private static final int VERSION = 1;
+    private static final int MAX_SIZE = 1 << 26;
+
+    static BandResponse binary(BufferedSource source) throws IOException {
+        if (source.readIntLe() != MAGIC || source.readByte() != VERSION)
+            throw new IOException("Not a band response");
+        String name = source.readString(checkSize(source.readIntLe()), StandardCharsets.UTF_8);
+        double multiplier = Double.longBitsToDouble(source.readLongLe());
+        int n = checkSize(source.readIntLe());
+
+        long[] dates = new long[n];
+        ByteBuffer.wrap(source.readByteArray(8L * n)).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(dates);
+        for (int i = 1; i < n; i++)
+            dates[i] += dates[i - 1];
+
+        float[] values = new float[n];
+        ByteBuffer.wrap(source.readByteArray(4L * n)).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+        if (multiplier != 1) {
+            for (int i = 0; i < n; i++)
+                values[i] = (float) (values[i] * multiplier);
+        }
+        return new BandResponse(name, null, dates, values);
+    }
+
+    private static int checkSize(int size) throws IOException {
+        if (size < 0 || size > MAX_SIZE)
+            throw new IOException("Invalid size " + size);
+        return size;
+    }
+
+    static BandResponse json(Reader reader) throws IOException, JSONException {
+        return new BandParser(reader).parse();
+    }
+
+    private final Reader reader;
+    private final char[] buf = new char[65536];
+    private int pos, end;
+
+    private final char[] number = new char[64];
+    private final StringBuilder text = new StringBuilder();
+
+    private BandParser(Reader _reader) {
+        reader = _reader;
+    }
+
+    private BandResponse parse() throws IOException, JSONException {
+        String name = "Unknown";
+        BandType bandType = null;
+        double multiplier = 1;
+        long[] dates = new long[0];
+        double[] values = new double[0];
+        int len = 0;
+
+        expect('{');
+        if (peekClean() == '}')
+            pos++;
+        else {
+            while (true) {
+                String key = string();
+                expect(':');
+                switch (key) {
+                    case "timeline" -> name = peekClean() == '"' ? string() : skip();
+                    case "multiplier" -> multiplier = toDouble(skip(), 1);
+                    case "bandType" -> {
+                        String raw = skip();
+                        bandType = raw.startsWith("{") ? new BandType(new JSONObject(raw)) : null;
+                    }
+                    case "data" -> {
+                        if (peekClean() == 'n') {
+                            skip();
+                            break;
+                        }
+                        expect('[');
+                        if (peekClean() == ']') {
+                            pos++;
+                            break;
+                        }
+                        while (true) {
+                            if (len == dates.length) {
+                                int size = Math.max(1024, len * 2);
+                                if (len >= MAX_SIZE)
+                                    throw new JSONException("Too many samples");
+                                dates = Arrays.copyOf(dates, size);
+                                values = Arrays.copyOf(values, size);
+                            }
+                            expect('[');
+                            dates[len] = time() * 1000L;
+                            expect(',');
+                            values[len] = number();
+                            // like org.json, entries may carry more members
+                            while (nextClean() == ',')
+                                skip();
+                            pos--;
+                            expect(']');
+                            len++;
+
+                            char c = nextClean();
+                            if (c == ']')
+                                break;
+                            if (c != ',')
+                                throw error("Expected , or ]");
+                        }
+                    }
+                    default -> skip();
+                }
+
+                char c = nextClean();
+                if (c == '}')
+                    break;
+                if (c != ',')
+                    throw error("Expected , or }");
+            }
+        }
+
+        float[] fvalues = new float[len];
+        for (int i = 0; i < len; i++)
+            fvalues[i] = (float) (values[i] * multiplier);
+        return new BandResponse(name, bandType, Arrays.copyOf(dates, len), fvalues);
+    }
+
+    private static double toDouble(String raw, double defaultValue) { // like optDouble
+        try {
+            return Double.parseDouble(raw.startsWith("\"") ? raw.substring(1, raw.length() - 1) : raw);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (pos < end)
+            return true;
+        end = reader.read(buf, 0, buf.length);
+        pos = 0;
+        if (end <= 0) {
+            end = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private char peekClean() throws IOException, JSONException {
+        char c = nextClean();
+        pos--;
+        return c;
+    }
+
+    private char nextClean() throws IOException, JSONException {
+        while (fill()) {
+            char c = buf[pos++];
+            if (c > ' ')
+                return c;
+        }
+        throw error("Unexpected end");
+    }
+
+    private void expect(char expected) throws IOException, JSONException {
+        if (nextClean() != expected)
+            throw error("Expected " + expected);
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " in band response");
+    }
+
+    private String string() throws IOException, JSONException {
+        expect('"');
+        text.setLength(0);
+        while (fill()) {
+            char c = buf[pos++];
+            if (c == '"')
+                return text.toString();
+            if (c == '\\') {
+                if (!fill())
+                    break;
+                c = buf[pos++];
+                switch (c) {
+                    case 'b' -> text.append('\b');
+                    case 'f' -> text.append('\f');
+                    case 'n' -> text.append('\n');
+                    case 'r' -> text.append('\r');
+                    case 't' -> text.append('\t');
+                    case 'u' -> {
+                        int u = 0;
+                        for (int i = 0; i < 4; i++) {
+                            if (!fill())
+                                throw error("Unexpected end");
+                            u = (u << 4) | Character.digit(buf[pos++], 16);
+                        }
+                        text.append((char) u);
+                    }
+                    default -> text.append(c);
+                }
+            } else
+                text.append(c);
+        }
+        throw error("Unterminated string");
+    }
+
+    // the raw text of a value, strings and nesting followed to their end
+    private String skip() throws IOException, JSONException {
+        text.setLength(0);
+        char c = nextClean();
+        if (c != '{' && c != '[' && c != '"') {
+            text.append(c);
+            while (fill() && buf[pos] > ' ' && buf[pos] != ',' && buf[pos] != '}' && buf[pos] != ']')
+                text.append(buf[pos++]);
+            return text.toString();
+        }
+
+        int depth = 0;
+        boolean inString = false;
+        while (true) {
+            text.append(c);
+            if (inString) {
+                if (c == '\\') {
+                    if (!fill())
+                        break;
+                    text.append(buf[pos++]);
+                } else if (c == '"')
+                    inString = false;
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[')
+                depth++;
+            else if (c == '}' || c == ']')
+                depth--;
+
+            if (depth == 0 && !inString)
+                return text.toString();
+            if (!fill())
+                break;
+            c = buf[pos++];
+        }
+        throw error("Unexpected end");
+    }
+
+    // the characters of a number in number[0..length)
+    private int numberChars() throws IOException, JSONException {
+        char c = nextClean();
+        int n = 0;
+        while (true) {
+            if (!(c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'))
+                break;
+            if (n == number.length)
+                throw error("Number too long");
+            number[n++] = c;
+            if (!fill())
+                return n;
+            c = buf[pos++];
+        }
+        pos--;
+        if (n == 0)
+            throw error("Expected a number");
+        return n;
+    }
+
+    // seconds, truncated like JSONArray.getLong
+    private long time() throws IOException, JSONException {
+        int n = numberChars();
+        boolean negative = number[0] == '-';
+        long v = 0;
+        for (int i = negative ? 1 : 0; i < n; i++) {
+            char c = number[i];
+            if (c < '0' || c > '9' || i >= 18)
+                return slowTime(n);
+            v = 10 * v + (c - '0');
+        }
+        return negative ? -v : v;
+    }
+
+    // org.json reads such numbers as BigDecimal or BigInteger, whose longValue keeps the low bits
+    private long slowTime(int n) throws JSONException {
+        try {
+            return new BigDecimal(number, 0, n).longValue();
+        } catch (NumberFormatException e) {
+            return (long) slowParse(n);
+        }
+    }
+
+    private double number() throws IOException, JSONException {
+        return parseDouble(numberChars());
+    }
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // exact when the digits and the power of ten are both exact doubles, otherwise left to Double.parseDouble
+    private double parseDouble(int n) throws JSONException {
+        int i = 0;
+        boolean negative = false;
+        if (number[0] == '-' || number[0] == '+') {
+            negative = number[0] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean dot = false;
+        for (; i < n; i++) {
+            char c = number[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa != 0 || c != '0')
+                    digits++;
+                mantissa = 10 * mantissa + (c - '0');
+                if (dot)
+                    scale--;
+            } else if (c == '.' && !dot)
+                dot = true;
+            else
+                break;
+            if (digits > 15)
+                return slowParse(n);
+        }
+        if (i < n) {
+            char c = number[i++];
+            if (c != 'e' && c != 'E' || i == n)
+                return slowParse(n);
+            boolean negExp = number[i] == '-';
+            if (number[i] == '-' || number[i] == '+')
+                i++;
+            int exp = 0;
+            for (; i < n; i++) {
+                c = number[i];
+                if (c < '0' || c > '9' || exp > 1000)
+                    return slowParse(n);
+                exp = 10 * exp + (c - '0');
+            }
+            scale += negExp ? -exp : exp;
+        }
+
+        double v = mantissa;
+        if (scale < -22 || scale > 22)
+            return slowParse(n);
+        v = scale < 0 ? v / POW10[-scale] : v * POW10[scale];
+        return negative ? -v : v;
+    }
+
+    private double slowParse(int n) throws JSONException {
+        try {
+            return Double.parseDouble(new String(number, 0, n));
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + new String(number, 0, n));
+        }
+    }
+
+}
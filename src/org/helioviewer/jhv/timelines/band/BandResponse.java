@@ -10,6 +10,13 @@ class BandResponse {
     final long[] dates;
     final float[] values;
 
+    BandResponse(String _bandName, BandType _bandType, long[] _dates, float[] _values) {
+        bandType = _bandType;
+        bandName = _bandName;
+        dates = _dates;
+        values = _values;
+    }
+
     BandResponse(JSONObject jo) {
         JSONObject bo = jo.optJSONObject("bandType");
         bandType = bo == null ? null : new BandType(bo);
@@ -2,12 +2,17 @@ package org.helioviewer.jhv.timelines.band;
 
 class GraphPolyline {
 
-    private final IntArray xPoints;
-    private final IntArray yPoints;
+    private final IntArray xPoints = new IntArray();
+    private final IntArray yPoints = new IntArray();
 
-    GraphPolyline(IntArray _xPoints, IntArray _yPoints) {
-        xPoints = _xPoints;
-        yPoints = _yPoints;
+    void add(int x, int y) {
+        xPoints.put(x);
+        yPoints.put(y);
+    }
+
+    void clear() {
+        xPoints.clear();
+        yPoints.clear();
     }
 
     int[] xPoints() {
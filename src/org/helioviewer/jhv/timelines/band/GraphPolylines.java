@@ -0,0 +1,104 @@
+package org.helioviewer.jhv.timelines.band;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+import org.helioviewer.jhv.timelines.draw.TimeAxis;
+import org.helioviewer.jhv.timelines.draw.YAxis;
+import org.helioviewer.jhv.timelines.propagation.PropagationModel;
+
+// Turns the samples visited in a band cache into polylines in pixels, in the same pass: the samples
+// falling in one pixel column are reduced to the first, min, max and last. The polylines and their
+// buffers are reused from one update to the next.
+class GraphPolylines implements BandCache.Visitor {
+
+    private final ArrayList<GraphPolyline> lines = new ArrayList<>();
+    private int used; // lines[0..used) are complete
+
+    private Rectangle graphArea;
+    private TimeAxis timeAxis;
+    private YAxis yAxis;
+    private PropagationModel propagationModel;
+
+    private boolean column; // a column is pending
+    private int colX, colFirst, colMin, colMax, colLast;
+
+    void begin(Rectangle _graphArea, TimeAxis _timeAxis, YAxis _yAxis, PropagationModel _propagationModel) {
+        graphArea = _graphArea;
+        timeAxis = _timeAxis;
+        yAxis = _yAxis;
+        propagationModel = _propagationModel;
+
+        used = 0;
+        column = false;
+        current().clear();
+    }
+
+    void end() {
+        gap();
+        graphArea = null;
+        timeAxis = null;
+        yAxis = null;
+        propagationModel = null;
+    }
+
+    void draw(Graphics2D g) {
+        for (int i = 0; i < used; i++) {
+            GraphPolyline line = lines.get(i);
+            g.drawPolyline(line.xPoints(), line.yPoints(), line.length());
+        }
+    }
+
+    private GraphPolyline current() {
+        if (used == lines.size())
+            lines.add(new GraphPolyline());
+        return lines.get(used);
+    }
+
+    @Override
+    public void value(long milli, float value) {
+        int x = timeAxis.value2pixel(graphArea.x, graphArea.width, propagationModel.getViewpointTime(milli));
+        int y = yAxis.value2pixel(graphArea.y, graphArea.height, value);
+        if (column && x == colX) {
+            colMin = Math.min(colMin, y);
+            colMax = Math.max(colMax, y);
+            colLast = y;
+            return;
+        }
+        flush();
+        column = true;
+        colX = x;
+        colFirst = colMin = colMax = colLast = y;
+    }
+
+    @Override
+    public void gap() {
+        flush();
+        if (current().length() > 0) {
+            used++;
+            current().clear();
+        }
+    }
+
+    private void flush() {
+        if (!column)
+            return;
+        column = false;
+
+        GraphPolyline line = current();
+        line.add(colX, colFirst);
+        int prev = colFirst;
+        if (colMin != colMax) { // the extreme nearer to the first point comes first
+            int a = colFirst - colMin <= colMax - colFirst ? colMin : colMax;
+            int b = a == colMin ? colMax : colMin;
+            if (a != prev)
+                line.add(colX, prev = a);
+            if (b != prev)
+                line.add(colX, prev = b);
+        }
+        if (colLast != prev)
+            line.add(colX, colLast);
+    }
+
+}
@@ -19,7 +19,7 @@ class IntArray {
 
     void put(int v) {
         if (length + 1 > array.length) {
-            array = Arrays.copyOf(array, array.length + CHUNK);
+            array = Arrays.copyOf(array, array.length + Math.max(CHUNK, array.length / 2));
         }
         array[length] = v;
         length++;
@@ -33,6 +33,7 @@ class RadioJ2KData implements ImageDataHandler {
     private final boolean willDraw;
 
     private BufferedImage bufferedImage;
+    private ImageBuffer heldBuffer; // backs bufferedImage
     private Region region;
 
     RadioJ2KData(J2KViewCallisto _view, long start, DecodeExecutor _executor) throws Exception {
@@ -67,6 +68,10 @@ class RadioJ2KData implements ImageDataHandler {
             view = null;
         }
         NIOImageFactory.free(bufferedImage);
+        if (heldBuffer != null) {
+            heldBuffer.release();
+            heldBuffer = null;
+        }
     }
 
     @Override
@@ -84,6 +89,8 @@ class RadioJ2KData implements ImageDataHandler {
         }
 
         region = imageData.getRegion();
+        imageBuffer.retain();
+        heldBuffer = imageBuffer;
         bufferedImage = NIOImageFactory.createIndexed(imageBuffer.buffer, w, h, RadioData.getColorModel());
         DrawController.drawRequest();
     }
@@ -93,7 +100,7 @@ class RadioJ2KData implements ImageDataHandler {
             Rectangle roi = getROI(xAxis);
             if (decodingNeeded && roi.width > 0 && roi.height > 0) {
                 view.setRegion(roi);
-                view.decode(null, 1, last_resolution);
+                view.decode(null, null, 1, last_resolution);
             }
         }
     }
@@ -7,6 +7,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.helioviewer.jhv.astronomy.Position;
+import org.helioviewer.jhv.base.Region;
 import org.helioviewer.jhv.base.lut.LUT;
 import org.helioviewer.jhv.imagedata.ImageDataHandler;
 import org.helioviewer.jhv.io.APIRequest;
@@ -48,7 +49,12 @@ public class BaseView implements View {
     }
 
     @Override
-    public void decode(Position viewpoint, double pixFactor, float factor) {
+    public void decode(Position viewpoint, @Nullable Region visibleArea, double pixFactor, float factor) {
+    }
+
+    @Override
+    public boolean coversVisibleArea(Position viewpoint, @Nullable Region visibleArea, double pixFactor) {
+        return true;
     }
 
     @Override
@@ -0,0 +1,146 @@
+package org.helioviewer.jhv.view;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.helioviewer.jhv.Settings;
+import org.helioviewer.jhv.imagedata.ImageBuffer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+// Decoded images weighted by their size in bytes, within the budget of the cache.decode setting
+// (MB, a quarter of the heap if 0). The budget is shared by all the views, of all kinds; each
+// partition (view) is held to a fair share of it when it competes with others.
+public class DecodeCache<K> {
+
+    private record Entry(ImageBuffer ib, Object part, long bytes) {
+    }
+
+    // the keys and bytes of a partition
+    private static class Partition {
+        final Set<Object> keys = ConcurrentHashMap.newKeySet();
+        final AtomicLong bytes = new AtomicLong();
+    }
+
+    private static final long budget = getBudget();
+    private static final ConcurrentHashMap<Object, Partition> partitions = new ConcurrentHashMap<>();
+    private static final Cache<Object, Entry> cache = Caffeine.newBuilder()
+            .maximumWeight(budget)
+            .weigher((Object key, Entry e) -> (int) Math.min(Integer.MAX_VALUE, e.bytes))
+            .removalListener((Object key, Entry e, RemovalCause cause) -> {
+                if (key != null && e != null) {
+                    unaccount(key, e, cause == RemovalCause.REPLACED);
+                    e.ib.release();
+                }
+            })
+            .executor(Runnable::run) // keep accounting in step with the cache
+            .recordStats()
+            .build();
+
+    private final Function<K, Object> partition;
+
+    public DecodeCache(Function<K, Object> _partition) {
+        partition = _partition;
+    }
+
+    private static long getBudget() {
+        try {
+            long mb = Long.parseLong(Settings.getProperty("cache.decode"));
+            if (mb > 0)
+                return mb * 1024 * 1024;
+        } catch (Exception ignore) {
+        }
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    private static long weigh(ImageBuffer ib) {
+        return (long) ib.width * ib.height * ib.format.bytes;
+    }
+
+    // a replaced key stays in the partition with the bytes of its new entry
+    private static void unaccount(Object key, Entry e, boolean replaced) {
+        partitions.computeIfPresent(e.part, (k, p) -> {
+            if (!replaced)
+                p.keys.remove(key);
+            return p.bytes.addAndGet(-e.bytes) > 0 || !p.keys.isEmpty() ? p : null;
+        });
+    }
+
+    @Nullable
+    public ImageBuffer getIfPresent(K key) {
+        Entry e = cache.getIfPresent(key);
+        return e == null ? null : e.ib;
+    }
+
+    // the cache takes its own reference to ib
+    public void put(K key, ImageBuffer ib) {
+        if (!ib.retain())
+            return;
+
+        Object part = partition.apply(key);
+        long bytes = weigh(ib);
+
+        int active = partitions.size() + (partitions.containsKey(part) ? 0 : 1);
+        long share = budget / active;
+        Partition p = partitions.get(part);
+        long used = p == null ? 0 : p.bytes.get();
+        if (active > 1 && used > 0 && used + bytes > share)
+            evictFrom(part, used + bytes - share);
+
+        partitions.compute(part, (k, v) -> {
+            Partition n = v == null ? new Partition() : v;
+            n.keys.add(key);
+            n.bytes.addAndGet(bytes);
+            return n;
+        });
+        cache.put(key, new Entry(ib, part, bytes));
+    }
+
+    // coldest entries of the partition go first; the walk from the coldest end stops when enough is found
+    private static void evictFrom(Object part, long excess) {
+        cache.policy().eviction().ifPresent(eviction -> {
+            List<Object> keys = eviction.coldest(stream -> {
+                ArrayList<Object> list = new ArrayList<>();
+                long freed = 0;
+                for (Iterator<Policy.CacheEntry<Object, Entry>> it = stream.iterator(); it.hasNext() && freed < excess; ) {
+                    Policy.CacheEntry<Object, Entry> ce = it.next();
+                    if (part.equals(ce.getValue().part)) {
+                        list.add(ce.getKey());
+                        freed += ce.getValue().bytes;
+                    }
+                }
+                return list;
+            });
+            cache.invalidateAll(keys);
+        });
+    }
+
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    public void invalidatePartition(Object part) {
+        Partition p = partitions.get(part);
+        if (p != null)
+            cache.invalidateAll(List.copyOf(p.keys));
+    }
+
+    public static String getAllStats() {
+        CacheStats stats = cache.stats();
+        long used = partitions.values().stream().mapToLong(p -> p.bytes.get()).sum();
+        return String.format("Decoded: %.0f/%dMB in %d views, hits %d, misses %d, evictions %d",
+                used / (1024 * 1024.), budget / (1024 * 1024), partitions.size(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+}
@@ -2,17 +2,34 @@ package org.helioviewer.jhv.view;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 import org.helioviewer.jhv.imagedata.ImageBuffer;
+import org.helioviewer.jhv.layers.Movie;
 import org.helioviewer.jhv.threads.EventQueueCallbackExecutor;
 import org.helioviewer.jhv.threads.JHVThread;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 
 public class DecodeExecutor {
 
+    public static final int PREFETCH_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    // number of frames to decode ahead of the displayed one during playback
+    public static final int PREFETCH_DEPTH = 2 * PREFETCH_THREADS;
+
+    // shared by all layers, oldest (stale) requests are dropped first
+    private static final ListeningExecutorService prefetchExecutor = createPrefetchExecutor();
+
+    private static final AtomicLong prefetchHits = new AtomicLong();
+    private static final AtomicLong prefetchMisses = new AtomicLong();
+
     private final ArrayBlockingQueue<Runnable> blockingQueue = new ArrayBlockingQueue<>(1);
     private final EventQueueCallbackExecutor executor =
             new EventQueueCallbackExecutor(
@@ -31,4 +48,70 @@ public class DecodeExecutor {
         executor.shutdown();
     }
 
+    // the returned future is cancelled if the request was dropped
+    public static ListenableFuture<ImageBuffer> prefetch(Callable<ImageBuffer> callable) {
+        return prefetchExecutor.submit(callable);
+    }
+
+    // visits up to PREFETCH_DEPTH frames after frame in the direction of playback, stops before coming back to it
+    public static void forEachPrefetchFrame(int frame, int maxFrame, IntConsumer visitor) {
+        Movie.AdvanceMode mode = Movie.getAdvanceMode();
+        int step = mode == Movie.AdvanceMode.SwingDown ? -1 : 1;
+
+        int start = frame;
+        for (int i = 0; i < PREFETCH_DEPTH; i++) {
+            int next = frame + step;
+            if (next < 0 || next > maxFrame) {
+                switch (mode) {
+                    case Loop -> next = 0;
+                    case Stop -> {
+                        return;
+                    }
+                    case Swing, SwingDown -> {
+                        step = -step;
+                        next = frame + step;
+                    }
+                }
+            }
+            if (next == start)
+                return;
+            frame = next;
+            visitor.accept(frame);
+        }
+    }
+
+    public static void countPrefetch(boolean hit) {
+        (hit ? prefetchHits : prefetchMisses).incrementAndGet();
+    }
+
+    public static String getPrefetchStats() {
+        long hits = prefetchHits.get(), misses = prefetchMisses.get();
+        long total = hits + misses;
+        return String.format("Prefetch hits: %d, misses: %d (%.1f%%)", hits, misses, total == 0 ? 0. : 100. * hits / total);
+    }
+
+    private static ListeningExecutorService createPrefetchExecutor() {
+        ThreadPoolExecutor tpe = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, 10000L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(4 * PREFETCH_DEPTH),
+                new JHVThread.NamedThreadFactory("Prefetch"),
+                new DiscardOldestCancelPolicy());
+        tpe.allowCoreThreadTimeOut(true);
+        return MoreExecutors.listeningDecorator(tpe);
+    }
+
+    // like DiscardOldestPolicy, but completes the dropped futures so that listeners are notified
+    private static class DiscardOldestCancelPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            if (e.isShutdown()) {
+                if (r instanceof Future<?> f)
+                    f.cancel(false);
+                return;
+            }
+            if (e.getQueue().poll() instanceof Future<?> f)
+                f.cancel(false);
+            e.execute(r);
+        }
+    }
+
 }
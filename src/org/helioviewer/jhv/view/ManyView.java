@@ -9,6 +9,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.helioviewer.jhv.astronomy.Position;
+import org.helioviewer.jhv.base.Region;
 import org.helioviewer.jhv.base.lut.LUT;
 import org.helioviewer.jhv.imagedata.ImageDataHandler;
 import org.helioviewer.jhv.io.APIRequest;
@@ -83,8 +84,13 @@ public class ManyView implements View {
     }
 
     @Override
-    public void decode(Position viewpoint, double pixFactor, float factor) {
-        frameMap.indexedValue(targetFrame).view.decode(viewpoint, pixFactor, factor);
+    public void decode(Position viewpoint, @Nullable Region visibleArea, double pixFactor, float factor) {
+        frameMap.indexedValue(targetFrame).view.decode(viewpoint, visibleArea, pixFactor, factor);
+    }
+
+    @Override
+    public boolean coversVisibleArea(Position viewpoint, @Nullable Region visibleArea, double pixFactor) {
+        return frameMap.indexedValue(targetFrame).view.coversVisibleArea(viewpoint, visibleArea, pixFactor);
     }
 
     @Nullable
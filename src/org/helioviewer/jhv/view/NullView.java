@@ -3,6 +3,7 @@ package org.helioviewer.jhv.view;
 import java.util.ArrayList;
 
 import org.helioviewer.jhv.astronomy.Position;
+import org.helioviewer.jhv.base.Region;
 import org.helioviewer.jhv.base.lut.LUT;
 import org.helioviewer.jhv.imagedata.ImageDataHandler;
 import org.helioviewer.jhv.io.APIRequest;
@@ -75,7 +76,12 @@ public class NullView implements View {
     }
 
     @Override
-    public void decode(Position viewpoint, double pixFactor, float factor) {
+    public void decode(Position viewpoint, @Nullable Region visibleArea, double pixFactor, float factor) {
+    }
+
+    @Override
+    public boolean coversVisibleArea(Position viewpoint, @Nullable Region visibleArea, double pixFactor) {
+        return true;
     }
 
     @Nullable
@@ -7,6 +7,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.helioviewer.jhv.astronomy.Position;
+import org.helioviewer.jhv.base.Region;
 import org.helioviewer.jhv.base.lut.LUT;
 import org.helioviewer.jhv.imagedata.ImageDataHandler;
 import org.helioviewer.jhv.io.APIRequest;
@@ -26,7 +27,11 @@ public interface View {
 
     boolean getMGN();
 
-    void decode(Position viewpoint, double pixFactor, float factor);
+    // visibleArea: the part of the scene plane seen by the camera, null if not known
+    void decode(Position viewpoint, @Nullable Region visibleArea, double pixFactor, float factor);
+
+    // whether the image last sent to the handler still covers the visible area, else decode is needed
+    boolean coversVisibleArea(Position viewpoint, @Nullable Region visibleArea, double pixFactor);
 
     @Nullable
     URI getURI();
@@ -2,10 +2,10 @@ package org.helioviewer.jhv.view.j2k;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.concurrent.Callable;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 
 import kdu_jni.KduException;
 import kdu_jni.Kdu_compositor_buf;
@@ -15,18 +15,18 @@ import kdu_jni.Kdu_global;
 import kdu_jni.Kdu_ilayer_ref;
 import kdu_jni.Kdu_quality_limiter;
 import kdu_jni.Kdu_region_compositor;
-import kdu_jni.Kdu_thread_env;
 
 import org.helioviewer.jhv.imagedata.ImageBuffer;
 import org.helioviewer.jhv.view.j2k.image.DecodeParams;
 import org.helioviewer.jhv.view.j2k.image.SubImage;
+import org.helioviewer.jhv.view.j2k.kakadu.KakaduThreads;
 
 import org.lwjgl.system.MemoryUtil;
 
 //import com.google.common.math.StatsAccumulator;
 //import com.google.common.base.Stopwatch;
 
-record J2KDecoder(J2KView view, DecodeParams params, boolean mgn) implements Callable<ImageBuffer> {
+record J2KDecoder(J2KView view, DecodeParams params, boolean mgn, boolean display) implements Callable<ImageBuffer> {
 
     // Maximum of samples to process per rendering iteration
     private static final int MAX_RENDER_SAMPLES = 256 * 1024;
@@ -34,7 +34,11 @@ record J2KDecoder(J2KView view, DecodeParams params, boolean mgn) implements Cal
     private static final Kdu_quality_limiter qualityLow = new Kdu_quality_limiter(2f / 256);
     private static final Kdu_quality_limiter qualityHigh = new Kdu_quality_limiter(1f / 256);
 
-    private static final ThreadLocal<Kdu_thread_env> localThread = ThreadLocal.withInitial(J2KDecoder::createThreadEnv);
+    // per thread row scratch for the channel extraction
+    private static final ThreadLocal<int[]> localRowInts = ThreadLocal.withInitial(() -> new int[0]);
+    private static final ThreadLocal<byte[]> localRowBytes = ThreadLocal.withInitial(() -> new byte[0]);
+    // shift of the first byte in memory of a native order int
+    private static final int firstByteShift = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 24;
 
     //private final Stopwatch sw = Stopwatch.createUnstarted();
     //private static final ThreadLocal<StatsAccumulator> localAcc = ThreadLocal.withInitial(StatsAccumulator::new);
@@ -42,11 +46,41 @@ record J2KDecoder(J2KView view, DecodeParams params, boolean mgn) implements Cal
     @Nonnull
     @Override
     public ImageBuffer call() throws Exception {
+        long t0 = System.nanoTime();
+        KakaduThreads.Lease lease = KakaduThreads.acquire(display);
+        ImageBuffer ib;
+        try {
+            ib = decode(lease);
+        } finally {
+            lease.close();
+        }
+
+        ImageBuffer filtered;
+        try {
+            filtered = ImageBuffer.mgnFilter(ib, mgn);
+        } catch (Exception | Error e) { // such as out of memory on large frames
+            ib.release();
+            throw e;
+        }
+        if (filtered != ib)
+            ib.release();
+        view.getGovernor().decoded(System.nanoTime() - t0, lease.getGroupNanos());
+        return filtered;
+    }
+
+    private ImageBuffer decode(KakaduThreads.Lease lease) throws KduException {
         SubImage subImage = params.subImage;
         int frame = params.frame;
         int numComponents = view.getNumComponents(frame);
-        Kdu_region_compositor compositor = createCompositor(view, params.factor < 1 ? qualityLow : qualityHigh);
+        Kdu_region_compositor compositor = createCompositor(view, lease, params.factor < 1 ? qualityLow : qualityHigh);
+        try {
+            return decode(compositor, subImage, frame, numComponents);
+        } finally {
+            destroyCompositor(compositor);
+        }
+    }
 
+    private ImageBuffer decode(Kdu_region_compositor compositor, SubImage subImage, int frame, int numComponents) throws KduException {
         Kdu_dims empty = new Kdu_dims();
         if (numComponents < 3) {
             // alpha tbd
@@ -74,70 +108,81 @@ record J2KDecoder(J2KView view, DecodeParams params, boolean mgn) implements Cal
         long addr = compositorBuf.Get_buf(srcStride, false);
         ByteBuffer nativeBuffer = MemoryUtil.memByteBuffer(addr, 4 * srcStride[0] * actualHeight).order(ByteOrder.nativeOrder());
 
+        IntBuffer nativeInts = nativeBuffer.asIntBuffer();
+
         ImageBuffer.Format format = numComponents < 3 ? ImageBuffer.Format.Gray8 : ImageBuffer.Format.ARGB32;
-        byte[] outBuffer = new byte[actualWidth * actualHeight * format.bytes];
-
-        Kdu_dims newRegion = new Kdu_dims();
-        //sw.reset().start();
-        while (compositor.Process(MAX_RENDER_SAMPLES, newRegion)) {
-            Kdu_coords newSize = newRegion.Access_size();
-            int newWidth = newSize.Get_x();
-            int newHeight = newSize.Get_y();
-            if (newWidth * newHeight == 0)
-                continue;
-
-            Kdu_coords newOffset = newRegion.Access_pos();
-            int newX = newOffset.Get_x() - actualX;
-            int newY = newOffset.Get_y() - actualY;
-
-            int dstIdx = newX + newY * actualWidth;
-            int srcIdx = 0;
-
-            if (numComponents < 3) {
-                for (int j = 0; j < newHeight; ++j, dstIdx += actualWidth, srcIdx += srcStride[0]) {
-                    for (int i = 0; i < newWidth; ++i) {
-                        outBuffer[dstIdx + i] = nativeBuffer.get(4 * (srcIdx + i));
+        ImageBuffer ib = ImageBuffer.allocatePooled(actualWidth, actualHeight, format);
+        ByteBuffer outBuffer = (ByteBuffer) ib.buffer;
+
+        try {
+            Kdu_dims newRegion = new Kdu_dims();
+            //sw.reset().start();
+            while (compositor.Process(MAX_RENDER_SAMPLES, newRegion)) {
+                Kdu_coords newSize = newRegion.Access_size();
+                int newWidth = newSize.Get_x();
+                int newHeight = newSize.Get_y();
+                if (newWidth * newHeight == 0)
+                    continue;
+
+                Kdu_coords newOffset = newRegion.Access_pos();
+                int newX = newOffset.Get_x() - actualX;
+                int newY = newOffset.Get_y() - actualY;
+
+                int dstIdx = newX + newY * actualWidth;
+                int srcIdx = 0;
+
+                if (numComponents < 3) {
+                    int[] rowInts = rowInts(newWidth);
+                    byte[] rowBytes = rowBytes(newWidth);
+                    for (int j = 0; j < newHeight; ++j, dstIdx += actualWidth, srcIdx += srcStride[0]) {
+                        nativeInts.get(srcIdx, rowInts, 0, newWidth);
+                        for (int i = 0; i < newWidth; ++i) // simple enough to be vectorized by the JIT
+                            rowBytes[i] = (byte) (rowInts[i] >>> firstByteShift);
+                        outBuffer.put(dstIdx, rowBytes, 0, newWidth);
+                    }
+                } else {
+                    for (int j = 0; j < newHeight; ++j, dstIdx += actualWidth, srcIdx += srcStride[0]) {
+                        outBuffer.put(4 * dstIdx, nativeBuffer, 4 * srcIdx, 4 * newWidth);
                     }
-                }
-            } else {
-                for (int j = 0; j < newHeight; ++j, dstIdx += actualWidth, srcIdx += srcStride[0]) {
-                    nativeBuffer.get(4 * srcIdx, outBuffer, 4 * dstIdx, 4 * newWidth);
                 }
             }
+        } catch (KduException | RuntimeException e) {
+            ib.release();
+            throw e;
         }
-
-        destroyCompositor(compositor);
 /*
         StatsAccumulator acc = localAcc.get();
         acc.add(sw.elapsed().toNanos() / 1e9);
         if (view.getMaximumFrameNumber() > 0 && acc.count() == view.getMaximumFrameNumber() + 1)
             System.out.println(">>> mean: " + acc.mean() + " stddev: " + acc.sampleStandardDeviation());
 */
-        ImageBuffer ib = new ImageBuffer(actualWidth, actualHeight, format, ByteBuffer.wrap(outBuffer).order(ByteOrder.nativeOrder()));
-        return ImageBuffer.mgnFilter(ib, mgn);
+        return ib;
     }
 
-    @Nullable
-    private static Kdu_thread_env createThreadEnv() {
-        try {
-            Kdu_thread_env kte = new Kdu_thread_env();
-            kte.Create();
-            int numThreads = Math.min(8, Kdu_global.Kdu_get_num_processors());
-            for (int i = 1; i < numThreads; i++)
-                kte.Add_thread();
-            return kte;
-        } catch (KduException e) {
-            e.printStackTrace();
+    private static int[] rowInts(int n) {
+        int[] row = localRowInts.get();
+        if (row.length < n) {
+            row = new int[n];
+            localRowInts.set(row);
+        }
+        return row;
+    }
+
+    private static byte[] rowBytes(int n) {
+        byte[] row = localRowBytes.get();
+        if (row.length < n) {
+            row = new byte[n];
+            localRowBytes.set(row);
         }
-        return null;
+        return row;
     }
 
-    private static Kdu_region_compositor createCompositor(J2KView j2k, Kdu_quality_limiter quality) throws KduException {
+    private static Kdu_region_compositor createCompositor(J2KView j2k, KakaduThreads.Lease lease, Kdu_quality_limiter quality) throws KduException {
         Kdu_region_compositor krc = new Kdu_region_compositor();
         krc.Create(j2k.getSource().getJpxSource());
         krc.Set_surface_initialization_mode(false);
         krc.Set_quality_limiting(quality, -1, -1);
-        krc.Set_thread_env(localThread.get(), null);
+        krc.Set_thread_env(lease.env, lease.queue);
         return krc;
     }
 
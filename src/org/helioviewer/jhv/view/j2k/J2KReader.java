@@ -2,14 +2,25 @@ package org.helioviewer.jhv.view.j2k;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import kdu_jni.KduException;
 
 import org.helioviewer.jhv.Log;
-import org.helioviewer.jhv.gui.UITimer;
+import org.helioviewer.jhv.Settings;
+import org.helioviewer.jhv.threads.JHVThread;
 import org.helioviewer.jhv.view.j2k.cache.CacheStatus;
+import org.helioviewer.jhv.view.j2k.image.DecodeParams;
 import org.helioviewer.jhv.view.j2k.image.ReadParams;
 import org.helioviewer.jhv.view.j2k.image.ResolutionSet.ResolutionLevel;
+import org.helioviewer.jhv.view.j2k.image.SubImage;
 import org.helioviewer.jhv.view.j2k.jpip.DatabinMap;
 import org.helioviewer.jhv.view.j2k.jpip.JPIPCache;
 import org.helioviewer.jhv.view.j2k.jpip.JPIPCacheManager;
@@ -21,20 +32,39 @@ import org.helioviewer.jhv.view.j2k.jpip.JPIPStream;
 
 class J2KReader implements Runnable {
 
+    private static final int MAX_CHANNELS = 8;
+
     private final BooleanSignal readerSignal = new BooleanSignal();
 
     private final Thread myThread;
     private volatile boolean isAbolished;
     private JPIPSocket socket;
 
+    // additional JPIP channels used for multi-frame caching, each serves always the same frame range
+    private final JPIPSocket[] channelSockets;
+    private final ExecutorService channelPool;
+    private final AtomicLong bytesRead = new AtomicLong();
+
     J2KReader(URI uri, JPIPCache cache) throws KduException, IOException {
         socket = new JPIPSocket(uri, cache);
         initJPIP(cache);
 
+        int numChannels = getNumChannels();
+        channelSockets = new JPIPSocket[numChannels - 1];
+        channelPool = numChannels > 1 ? Executors.newFixedThreadPool(numChannels - 1, new JHVThread.NamedThreadFactory("Reader channel " + uri)) : null;
+
         myThread = new Thread(this, "Reader " + uri);
         myThread.setDaemon(true);
     }
 
+    private static int getNumChannels() {
+        try {
+            return Math.max(1, Math.min(MAX_CHANNELS, Integer.parseInt(Settings.getProperty("jpip.channels"))));
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+
     void start() {
         myThread.start();
     }
@@ -45,6 +75,10 @@ class J2KReader implements Runnable {
             return;
         isAbolished = true;
 
+        if (channelPool != null) {
+            channelPool.shutdownNow();
+            closeChannels();
+        }
         while (myThread.isAlive()) {
             try {
                 if (socket != null)
@@ -57,6 +91,19 @@ class J2KReader implements Runnable {
         }
     }
 
+    private void closeChannels() {
+        for (int i = 0; i < channelSockets.length; i++) {
+            JPIPSocket s = channelSockets[i];
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException ignore) {
+                }
+                channelSockets[i] = null;
+            }
+        }
+    }
+
     void signalReader(ReadParams params) {
         readerSignal.signal(params);
     }
@@ -97,14 +144,209 @@ class J2KReader implements Runnable {
         return JPIPQuery.create(JPIPConstants.MAX_REQUEST_LEN, "stream", String.valueOf(layer), "fsiz", fSiz + ",closest", "rsiz", fSiz, "roff", "0,0");
     }
 
-    private static String[] createMultiQuery(String fSiz, int numFrames) {
+    private static String createQuery(String fSiz, SubImage roi, int layer) {
+        return JPIPQuery.create(JPIPConstants.MAX_REQUEST_LEN, "stream", String.valueOf(layer), "fsiz", fSiz + ",closest", "rsiz", roi.w + "," + roi.h, "roff", roi.x + "," + roi.y);
+    }
+
+    private static String[] createMultiQuery(String fSiz, int numFrames, CacheStatus cacheStatus, int level) {
         String[] stepQuerys = new String[numFrames];
         for (int lpi = 0; lpi < numFrames; lpi++) {
-            stepQuerys[lpi] = createQuery(fSiz, lpi);
+            AtomicBoolean status = cacheStatus.getFrameStatus(lpi, level);
+            if (status == null || !status.get()) // skip what is already complete
+                stepQuerys[lpi] = createQuery(fSiz, lpi);
         }
         return stepQuerys;
     }
 
+    private static final int PIPELINE_DEPTH = 4;
+
+    // Sends the queries of the frame range [lo, hi) on the given socket until everything
+    // is complete or caching is interrupted; returns whether it was interrupted.
+    // When caching several frames, up to PIPELINE_DEPTH requests are in flight on the socket.
+    private boolean readRange(JPIPSocket s, ReadParams params, String[] stepQuerys, int lo, int hi, int start, boolean singleFrame) throws KduException, IOException {
+        J2KView view = params.view;
+        JPIPCache cache = view.getJPIPCache();
+        CacheStatus cacheStatus = view.getCacheStatus();
+        DecodeParams decodeParams = params.decodeParams;
+        int level = decodeParams.level;
+        // a region of the frame was requested, its completion does not complete the frame
+        boolean roi = singleFrame && !decodeParams.subImage.equals(view.getResolutionLevel(decodeParams.frame, level).subImage);
+
+        int pendingSteps = 0;
+        for (int i = lo; i < hi; i++) {
+            if (stepQuerys[i] != null)
+                pendingSteps++;
+        }
+
+        int depth = singleFrame ? 1 : PIPELINE_DEPTH;
+        int[] batchSteps = new int[depth];
+        String[] batchQuerys = new String[depth];
+
+        int currentStep = start;
+        while (pendingSteps > 0) {
+            // select next queries based on strategy, the ones in the JPIP cache are served at once
+            int batch = 0;
+            for (int scanned = 0; scanned < hi - lo && batch < depth; scanned++) {
+                if (currentStep >= hi)
+                    currentStep = lo;
+                int step = currentStep;
+                if (!singleFrame)
+                    currentStep++;
+
+                // if query is already complete, go to next step
+                if (stepQuerys[step] == null)
+                    continue;
+
+                String key = view.getCacheKey(step);
+                JPIPStream stream = key == null ? null : JPIPCacheManager.get(key, level);
+                if (stream == null) { // not in JPIP cache
+                    batchSteps[batch] = step;
+                    batchQuerys[batch] = stepQuerys[step];
+                    batch++;
+                } else {
+                    cache.put(step, stream);
+                    pendingSteps--;
+                    setComplete(params, stepQuerys, step, singleFrame);
+                }
+            }
+
+            if (batch > 0) {
+                JPIPResponse[] responses = batch == 1 ?
+                        new JPIPResponse[]{s.request(batchQuerys[0], cache, batchSteps[0])} :
+                        s.request(Arrays.copyOf(batchQuerys, batch), Arrays.copyOf(batchSteps, batch), cache);
+
+                for (int i = 0; i < batch; i++) {
+                    int step = batchSteps[i];
+                    JPIPResponse res = responses[i];
+                    bytesRead.addAndGet(res.getSize());
+
+                    if (!res.isResponseComplete()) {
+                        cacheStatus.setFramePartial(view.getSource(), step); // tell the cache status
+                    } else if (roi) {
+                        pendingSteps--;
+                        stepQuerys[step] = null;
+
+                        cacheStatus.setFramePartial(view.getSource(), step);
+                        // the decoded region is final and can be cached
+                        DecodeParams complete = new DecodeParams(decodeParams.serial, decodeParams.frame, decodeParams.subImage, level, decodeParams.factor, true, decodeParams.viewpoint);
+                        view.signalDecoderFromReader(new ReadParams(view, complete, params.priority));
+                    } else { // downloaded
+                        String key = view.getCacheKey(step);
+                        JPIPStream stream;
+                        if (key != null && (stream = cache.get(step)) != null)
+                            JPIPCacheManager.put(key, level, stream);
+                        pendingSteps--;
+                        setComplete(params, stepQuerys, step, singleFrame);
+                    }
+                }
+            }
+
+            // check whether caching has to be interrupted
+            if (readerSignal.isSignaled() || Thread.interrupted()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void setComplete(ReadParams params, String[] stepQuerys, int step, boolean singleFrame) throws KduException {
+        J2KView view = params.view;
+        // mark query as complete
+        stepQuerys[step] = null;
+
+        view.getCacheStatus().setFrameComplete(view.getSource(), step, params.decodeParams.level); // tell the cache status
+        view.getGovernor().frameArrived();
+        if (singleFrame)
+            view.signalDecoderFromReader(params); // refresh current image
+    }
+
+    private boolean readChannel(int channel, ReadParams params, String[] stepQuerys, int lo, int hi, int start) throws KduException, IOException {
+        J2KView view = params.view;
+        JPIPSocket s = channelSockets[channel];
+        if (s == null || s.isClosed()) {
+            s = new JPIPSocket(view.getURI(), view.getJPIPCache());
+            channelSockets[channel] = s;
+        }
+        try {
+            return readRange(s, params, stepQuerys, lo, hi, start, false);
+        } catch (KduException | IOException e) {
+            try {
+                s.close();
+            } catch (IOException ignore) {
+            }
+            throw e;
+        }
+    }
+
+    // Splits the frame range in contiguous parts, one per channel; the reader thread serves the first part
+    private boolean readMulti(ReadParams params, String[] stepQuerys, int start) throws KduException, IOException {
+        int numFrames = stepQuerys.length;
+        int numChannels = Math.min(channelSockets.length + 1, numFrames);
+        if (numChannels <= 1)
+            return readRange(socket, params, stepQuerys, 0, numFrames, start, false);
+
+        int pending = 0;
+        for (String query : stepQuerys) {
+            if (query != null)
+                pending++;
+        }
+        long t0 = System.nanoTime();
+        bytesRead.set(0);
+
+        ArrayList<Future<Boolean>> futures = new ArrayList<>(numChannels - 1);
+        for (int c = 1; c < numChannels; c++) {
+            int channel = c - 1;
+            int lo = c * numFrames / numChannels;
+            int hi = (c + 1) * numFrames / numChannels;
+            int channelStart = start >= lo && start < hi ? start : lo;
+            futures.add(channelPool.submit(() -> readChannel(channel, params, stepQuerys, lo, hi, channelStart)));
+        }
+
+        int hi0 = numFrames / numChannels;
+        boolean stopReading = false;
+        Exception failure = null;
+        try {
+            stopReading = readRange(socket, params, stepQuerys, 0, hi0, start < hi0 ? start : 0, false);
+        } catch (KduException | IOException e) {
+            failure = e;
+        }
+
+        // wait for the other channels, they stop as well when the reader is signalled;
+        // a failed channel was closed by itself, the main socket is kept
+        boolean channelFailed = false;
+        for (Future<Boolean> future : futures) {
+            try {
+                stopReading |= future.get();
+            } catch (ExecutionException e) {
+                channelFailed = true;
+                Log.warn(params.view.getURI() + ": JPIP channel failed", e.getCause());
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                stopReading = true;
+                break;
+            }
+        }
+
+        if (failure instanceof KduException ke)
+            throw ke;
+        if (failure instanceof IOException ioe)
+            throw ioe;
+        if (failure != null)
+            throw new IOException(failure);
+        if (channelFailed) { // the frames left go with the next round, on a new channel
+            if (!stopReading && retries++ < 13)
+                readerSignal.signal(params);
+            return stopReading;
+        }
+
+        if (!stopReading && pending > 0) {
+            long ms = Math.max(1, (System.nanoTime() - t0) / 1000000);
+            Log.info(params.view.getURI() + ": " + pending + " frames in " + ms + "ms over " + numChannels + " channels, " +
+                    String.format("%.1f", bytesRead.get() / 1e3 / ms) + " MB/s");
+        }
+        return stopReading;
+    }
+
     @Override
     public void run() {
         while (!isAbolished) {
@@ -138,71 +380,20 @@ class J2KReader implements Runnable {
                 // choose cache strategy
                 boolean singleFrame = numFrames <= 1 /* one frame */ || params.priority;
 
-                // build query based on strategy
-                int currentStep;
-                String[] stepQuerys;
+                // build query based on strategy and send until everything is complete or caching is interrupted
+                boolean stopReading;
                 String fSiz = width + "," + height;
                 if (singleFrame) {
-                    stepQuerys = new String[]{createQuery(fSiz, frame)};
-                    currentStep = frame;
+                    SubImage roi = params.decodeParams.subImage;
+                    String[] stepQuerys = new String[numFrames];
+                    stepQuerys[frame] = roi.equals(resolution.subImage) ? createQuery(fSiz, frame) : createQuery(fSiz, roi, frame);
+                    stopReading = readRange(socket, params, stepQuerys, frame, frame + 1, frame, true);
                 } else {
-                    stepQuerys = createMultiQuery(fSiz, numFrames);
+                    String[] stepQuerys = createMultiQuery(fSiz, numFrames, cacheStatus, level);
 
                     int partial = cacheStatus.getPartialUntil();
-                    currentStep = partial < numFrames - 1 ? partial : frame;
-                }
-
-                // send queries until everything is complete or caching is interrupted
-                int completeSteps = 0;
-                boolean stopReading = false;
-                while (!stopReading && completeSteps < stepQuerys.length) {
-                    if (currentStep >= stepQuerys.length)
-                        currentStep = 0;
-
-                    // if query is already complete, go to next step
-                    if (stepQuerys[currentStep] == null) {
-                        currentStep++;
-                        continue;
-                    }
-
-                    boolean downloadComplete = false;
-                    {
-                        String key = view.getCacheKey(currentStep);
-                        JPIPStream stream = key == null ? null : JPIPCacheManager.get(key, level);
-                        if (stream == null) { // not in JPIP cache
-                            JPIPResponse res = socket.request(stepQuerys[currentStep], cache, currentStep);
-                            if (res.isResponseComplete()) { // downloaded
-                                downloadComplete = true;
-                                if (key != null && (stream = cache.get(currentStep)) != null)
-                                    JPIPCacheManager.put(key, level, stream);
-                            }
-                        } else {
-                            downloadComplete = true;
-                            cache.put(currentStep, stream);
-                        }
-                    }
-
-                    if (downloadComplete) {
-                        // mark query as complete
-                        completeSteps++;
-                        stepQuerys[currentStep] = null;
-
-                        cacheStatus.setFrameComplete(view.getSource(), currentStep, level); // tell the cache status
-                        if (singleFrame)
-                            view.signalDecoderFromReader(params); // refresh current image
-                    } else {
-                        cacheStatus.setFramePartial(view.getSource(), currentStep); // tell the cache status
-                    }
-
-                    UITimer.cacheStatusChanged();
-
-                    // select next query based on strategy
-                    if (!singleFrame)
-                        currentStep++;
-                    // check whether caching has to be interrupted
-                    if (readerSignal.isSignaled() || Thread.interrupted()) {
-                        stopReading = true;
-                    }
+                    int currentStep = partial < numFrames - 1 ? partial : frame;
+                    stopReading = readMulti(params, stepQuerys, currentStep);
                 }
 
                 view.setDownloading(false);
@@ -213,12 +404,18 @@ class J2KReader implements Runnable {
                         socket.close();
                     } catch (IOException ignore) {
                     }
+                    if (channelPool != null) {
+                        closeChannels();
+                        channelPool.shutdown();
+                    }
                     return;
                 }
                 // if single frame & not interrupted & incomplete -> signal again to go on reading
                 if (singleFrame && !stopReading && !cacheStatus.isComplete(level)) {
-                    params.priority = false;
-                    readerSignal.signal(params);
+                    DecodeParams dp = params.decodeParams;
+                    // go on with the whole frame after the visible region
+                    DecodeParams full = new DecodeParams(dp.serial, dp.frame, resolution.subImage, dp.level, dp.factor, false, dp.viewpoint);
+                    readerSignal.signal(new ReadParams(view, full, false));
                 }
             } catch (KduException | IOException e) {
                 try {
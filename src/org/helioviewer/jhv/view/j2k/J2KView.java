@@ -3,8 +3,15 @@ package org.helioviewer.jhv.view.j2k;
 import java.awt.EventQueue;
 import java.lang.ref.Cleaner;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -19,12 +26,20 @@ import org.helioviewer.jhv.imagedata.ImageBuffer;
 import org.helioviewer.jhv.imagedata.ImageData;
 import org.helioviewer.jhv.io.APIRequest;
 import org.helioviewer.jhv.layers.Movie;
+import org.helioviewer.jhv.math.MathUtils;
+import org.helioviewer.jhv.math.Quat;
+import org.helioviewer.jhv.math.Vec2;
+import org.helioviewer.jhv.math.Vec3;
+import org.helioviewer.jhv.metadata.MapMetaDataContainer;
 import org.helioviewer.jhv.metadata.MetaData;
 import org.helioviewer.jhv.metadata.PixelBasedMetaData;
 import org.helioviewer.jhv.metadata.XMLMetaDataContainer;
+import org.helioviewer.jhv.threads.EventQueueCallbackExecutor;
 import org.helioviewer.jhv.time.JHVTime;
 import org.helioviewer.jhv.time.TimeMap;
+import org.helioviewer.jhv.time.TimeUtils;
 import org.helioviewer.jhv.view.BaseView;
+import org.helioviewer.jhv.view.DecodeCache;
 import org.helioviewer.jhv.view.DecodeCallback;
 import org.helioviewer.jhv.view.DecodeExecutor;
 import org.helioviewer.jhv.view.j2k.cache.CacheStatus;
@@ -32,19 +47,23 @@ import org.helioviewer.jhv.view.j2k.cache.CacheStatusLocal;
 import org.helioviewer.jhv.view.j2k.cache.CacheStatusRemote;
 import org.helioviewer.jhv.view.j2k.image.DecodeParams;
 import org.helioviewer.jhv.view.j2k.image.ReadParams;
+import org.helioviewer.jhv.view.j2k.image.ResolutionSet;
 import org.helioviewer.jhv.view.j2k.image.ResolutionSet.ResolutionLevel;
 import org.helioviewer.jhv.view.j2k.image.SubImage;
 import org.helioviewer.jhv.view.j2k.jpip.JPIPCache;
+import org.helioviewer.jhv.view.j2k.jpip.JPIPCacheManager;
 import org.helioviewer.jhv.view.j2k.kakadu.KakaduSource;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class J2KView extends BaseView {
 
     private static final AtomicInteger global_serial = new AtomicInteger(0);
 
-    private static final Cache<DecodeParams, ImageBuffer> decodeCache = Caffeine.newBuilder().softValues().build();
+    private static final DecodeCache<DecodeParams> decodeCache = new DecodeCache<>(params -> params.serial);
 
     private static final Cleaner reaper = Cleaner.create();
     private final Cleaner.Cleanable abolishable;
@@ -54,14 +73,24 @@ public class J2KView extends BaseView {
     private final String[] xmlMetaData;
 
     private final String[] cacheKey;
+    private final String metaKey;
     private final TimeMap<Integer> frameMap = new TimeMap<>();
 
     private final KakaduSource source;
     private final JPIPCache jpipCache;
 
+    private final ConcurrentHashMap<DecodeParams, ListenableFuture<ImageBuffer>> prefetching = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, DecodeParams> decodedROI = new ConcurrentHashMap<>(); // last cached region per frame
+
+    private record Shown(int frame, int level, SubImage roi) {
+    }
+
+    private volatile Shown shown; // what was last sent to the handler
+
     protected final int serial;
     protected final CacheStatus cacheStatus;
     protected final J2KReader reader;
+    private final PlaybackGovernor governor;
 
     private static int incrementSerial() {
         while (true) {
@@ -93,17 +122,41 @@ public class J2KView extends BaseView {
             source = new KakaduSource(jpipCache, uri);
             maxFrame = source.getNumberLayers() - 1;
 
-            xmlMetaData = source.extractMetaData();
+            metaKey = getMetaKey(request, maxFrame + 1);
+            List<Map<String, String>> kept = metaKey == null ? null : JPIPCacheManager.getMetaData(metaKey, maxFrame + 1);
             metaData = new MetaData[maxFrame + 1];
-            for (int i = 0; i <= maxFrame; i++) {
-                if (xmlMetaData[i] == null) {
-                    xmlMetaData[i] = "<meta/>";
-                    metaData[i] = new PixelBasedMetaData(100, 100, uri);
-                    Log.warn("Helioviewer metadata missing for layer " + i);
-                } else
-                    metaData[i] = new XMLMetaDataContainer(xmlMetaData[i]).getHVMetaData();
-                frameMap.put(metaData[i].getViewpoint().time, i);
+            if (kept != null) { // the XML is read back when displayed
+                xmlMetaData = new String[maxFrame + 1];
+                IntStream.rangeClosed(0, maxFrame).parallel().forEach(i -> {
+                    Map<String, String> values = kept.get(i);
+                    metaData[i] = values == null ? new PixelBasedMetaData(100, 100, uri) : new MapMetaDataContainer(values).getHVMetaData();
+                });
+            } else {
+                xmlMetaData = source.extractMetaData();
+                List<Map<String, String>> values = new ArrayList<>(Collections.nCopies(maxFrame + 1, null));
+                IntStream.rangeClosed(0, maxFrame).parallel().forEach(i -> {
+                    if (xmlMetaData[i] == null) {
+                        metaData[i] = new PixelBasedMetaData(100, 100, uri);
+                        Log.warn("Helioviewer metadata missing for layer " + i);
+                    } else {
+                        try {
+                            XMLMetaDataContainer container = new XMLMetaDataContainer(xmlMetaData[i]);
+                            metaData[i] = container.getHVMetaData();
+                            values.set(i, container.getValues());
+                        } catch (Exception e) { // out of the stream
+                            throw new RuntimeException(e.getMessage(), e);
+                        }
+                    }
+                });
+                if (metaKey != null)
+                    JPIPCacheManager.putMetaData(metaKey, values, xmlMetaData.clone());
+                for (int i = 0; i <= maxFrame; i++) {
+                    if (xmlMetaData[i] == null)
+                        xmlMetaData[i] = "<meta/>";
+                }
             }
+            for (int i = 0; i <= maxFrame; i++)
+                frameMap.put(metaData[i].getViewpoint().time, i);
             frameMap.buildIndex();
             if (frameMap.maxIndex() != maxFrame)
                 throw new Exception("Duplicated time stamps");
@@ -119,6 +172,8 @@ public class J2KView extends BaseView {
                 }
             }
 
+            governor = new PlaybackGovernor(getName());
+
             int[] lut = source.getLUT();
             if (lut != null)
                 builtinLUT = new LUT(getName() + " built-in", lut);
@@ -130,7 +185,7 @@ public class J2KView extends BaseView {
                 reader.start();
             }
 
-            abolishable = reaper.register(this, new J2KAbolisher(serial, reader, source, jpipCache));
+            abolishable = reaper.register(this, new J2KAbolisher(serial, reader, source, jpipCache, prefetching, governor));
         } catch (Exception e) {
             String msg = e instanceof KduException ? "Kakadu error" : e.getMessage();
             throw new Exception(msg + ": " + uri, e);
@@ -147,13 +202,14 @@ public class J2KView extends BaseView {
     }
 
     private record J2KAbolisher(int aSerial, J2KReader aReader, KakaduSource aSource,
-                                JPIPCache aJpipCache) implements Runnable {
+                                JPIPCache aJpipCache,
+                                ConcurrentHashMap<DecodeParams, ListenableFuture<ImageBuffer>> aPrefetching,
+                                PlaybackGovernor aGovernor) implements Runnable {
         @Override
         public void run() {
-            for (DecodeParams params : decodeCache.asMap().keySet()) {
-                if (params.serial == aSerial)
-                    decodeCache.invalidate(params);
-            }
+            cancelPrefetch(aPrefetching);
+            aGovernor.abolish();
+            decodeCache.invalidatePartition(aSerial);
             // reader abolish may take too long in stressed conditions
             new Thread(() -> {
                 if (aReader != null) {
@@ -181,7 +237,14 @@ public class J2KView extends BaseView {
 
     @Override
     public void clearCache() {
-        decodeCache.invalidateAll();
+        cancelPrefetch(prefetching);
+        decodedROI.clear();
+        decodeCache.invalidatePartition(serial);
+    }
+
+    private static void cancelPrefetch(ConcurrentHashMap<DecodeParams, ListenableFuture<ImageBuffer>> map) {
+        map.values().forEach(future -> future.cancel(false));
+        map.clear();
     }
 
     @Override
@@ -256,19 +319,98 @@ public class J2KView extends BaseView {
         return isDownloading;
     }
 
-    protected DecodeParams getDecodeParams(Position viewpoint, int frame, double pixFactor, float factor) {
+    protected DecodeParams getDecodeParams(Position viewpoint, @Nullable Region visibleArea, int frame, double pixFactor, float factor) {
         ResolutionLevel res;
+        SubImage subImage;
         if (Movie.isRecording()) { // all bets are off
             res = cacheStatus.getResolutionSet(frame).getResolutionLevel(0);
+            subImage = res.subImage;
             factor = 1;
         } else {
             MetaData m = metaData[frame];
             int reqHeight = (int) (m.getPhysicalRegion().height * pixFactor + .5);
-            res = cacheStatus.getResolutionSet(frame).getNextResolutionLevel(reqHeight, reqHeight);
+            ResolutionSet set = cacheStatus.getResolutionSet(frame);
+            res = set.getNextResolutionLevel(reqHeight, reqHeight);
+            int bias = governor.getLevelBias();
+            if (bias > 0)
+                res = set.getResolutionLevel(Math.min(set.numLevels - 1, res.level + bias));
+            factor *= governor.getFactor();
+            subImage = visibleArea == null ? res.subImage : getVisibleSubImage(m, res, viewpoint, visibleArea);
         }
 
         AtomicBoolean status = cacheStatus.getFrameStatus(frame, res.level); // before signalling to reader
-        return new DecodeParams(serial, frame, res.subImage, res.level, factor, status != null && status.get(), viewpoint);
+        return new DecodeParams(serial, frame, subImage, res.level, factor, status != null && status.get(), viewpoint);
+    }
+
+    private static final int ROI_TILE = 256;
+    private static final double ROI_MAX_ANGLE = 0.2; // planar approximation too loose beyond
+    private static final double ROI_MAX_AREA = 0.6; // not worth it above this fraction of the image
+
+    // Tile-aligned part of the image covering the visible area, with one tile of margin for panning;
+    // the difference between the camera and image viewpoints is accounted by enlarging the area
+    private static SubImage getVisibleSubImage(MetaData m, ResolutionLevel res, Position viewpoint, Region visible) {
+        double angle = Quat.angle(viewpoint.toQuat(), m.getViewpoint().toQuat());
+        if (angle > ROI_MAX_ANGLE)
+            return res.subImage;
+
+        double radius = Math.hypot(Math.max(Math.abs(visible.llx), Math.abs(visible.urx)), Math.max(Math.abs(visible.lly), Math.abs(visible.ury)));
+        double margin = angle * Math.max(1, radius);
+
+        Region full = m.getPhysicalRegion();
+        Vec2 crval = m.getCRVAL();
+        Quat crota = m.getCROTA();
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            double x = (i & 1) == 0 ? visible.llx - margin : visible.urx + margin;
+            double y = (i & 2) == 0 ? visible.lly - margin : visible.ury + margin;
+            Vec3 v = crota.rotateInverseVector(new Vec3(x - crval.x, y - crval.y, 0));
+            // same convention as the texture coordinates in the shaders
+            double tx = (v.x - full.llx) / full.width;
+            double ty = (-v.y - full.lly) / full.height;
+            minX = Math.min(minX, tx);
+            maxX = Math.max(maxX, tx);
+            minY = Math.min(minY, ty);
+            maxY = Math.max(maxY, ty);
+        }
+
+        int x0 = Math.max(0, MathUtils.roundDownTo((int) (MathUtils.clip(minX, 0, 1) * res.width), ROI_TILE) - ROI_TILE);
+        int y0 = Math.max(0, MathUtils.roundDownTo((int) (MathUtils.clip(minY, 0, 1) * res.height), ROI_TILE) - ROI_TILE);
+        int x1 = Math.min(res.width, MathUtils.roundUpTo((int) Math.ceil(MathUtils.clip(maxX, 0, 1) * res.width), ROI_TILE) + ROI_TILE);
+        int y1 = Math.min(res.height, MathUtils.roundUpTo((int) Math.ceil(MathUtils.clip(maxY, 0, 1) * res.height), ROI_TILE) + ROI_TILE);
+        if ((double) (x1 - x0) * (y1 - y0) > ROI_MAX_AREA * res.width * res.height)
+            return res.subImage;
+        return new SubImage(x0, y0, x1 - x0, y1 - y0, res.width, res.height);
+    }
+
+    // a cached decode of the same frame and resolution which contains the requested region
+    @Nullable
+    private DecodeParams getCovering(DecodeParams params) {
+        SubImage full = getResolutionLevel(params.frame, params.level).subImage;
+        if (params.subImage.equals(full))
+            return null;
+
+        DecodeParams fullParams = new DecodeParams(serial, params.frame, full, params.level, params.factor, true, params.viewpoint);
+        if (decodeCache.getIfPresent(fullParams) != null)
+            return fullParams;
+        DecodeParams roi = decodedROI.get(params.frame);
+        if (roi != null && roi.level == params.level && roi.factor == params.factor && roi.subImage.contains(params.subImage))
+            return roi;
+        return null;
+    }
+
+    private static void cachePut(DecodeParams params, ImageBuffer buffer, ConcurrentHashMap<Integer, DecodeParams> rois) {
+        decodeCache.put(params, buffer);
+        rois.put(params.frame, params);
+    }
+
+    @Override
+    public boolean coversVisibleArea(Position viewpoint, @Nullable Region visibleArea, double pixFactor) {
+        Shown s = shown;
+        if (s == null || s.frame != targetFrame) // a decode is on its way
+            return true;
+        DecodeParams params = getDecodeParams(viewpoint, visibleArea, targetFrame, pixFactor, 1);
+        return params.level == s.level && s.roi.contains(params.subImage);
     }
 
     private int currentLevel = 10000;
@@ -284,12 +426,51 @@ public class J2KView extends BaseView {
     }
 
     @Override
-    public void decode(Position viewpoint, double pixFactor, float factor) {
-        DecodeParams decodeParams = getDecodeParams(viewpoint, targetFrame, pixFactor, factor);
+    public void decode(Position viewpoint, @Nullable Region visibleArea, double pixFactor, float factor) {
+        governor.update(Movie.isPlaying(), Movie.getDesiredFPS(), cacheStatus.isComplete(currentLevel));
+        DecodeParams decodeParams = getDecodeParams(viewpoint, visibleArea, targetFrame, pixFactor, factor);
+        governor.setLevel(decodeParams.level);
         if (reader != null && !decodeParams.complete) {
             signalReader(decodeParams);
         }
         executeDecode(decodeParams);
+
+        if (Movie.isPlaying() && maxFrame > 0)
+            prefetch(viewpoint, visibleArea, pixFactor, factor);
+    }
+
+    // decode ahead of targetFrame in the direction of playback, only complete frames are worth caching
+    private void prefetch(Position viewpoint, @Nullable Region visibleArea, double pixFactor, float factor) {
+        int partialUntil = cacheStatus.getPartialUntil();
+        DecodeExecutor.forEachPrefetchFrame(targetFrame, maxFrame, frame -> {
+            if (frame > partialUntil)
+                return;
+            DecodeParams params = getDecodeParams(viewpoint, visibleArea, frame, pixFactor, factor);
+            if (!params.complete || prefetching.containsKey(params) || decodeCache.getIfPresent(params) != null || getCovering(params) != null)
+                return;
+
+            ListenableFuture<ImageBuffer> future = DecodeExecutor.prefetch(new J2KDecoder(this, params, mgn, false));
+            if (future.isDone()) // dropped
+                return;
+            prefetching.put(params, future);
+            Futures.addCallback(future, new PrefetchCallback(params, prefetching, decodedROI), MoreExecutors.directExecutor());
+        });
+    }
+
+    private record PrefetchCallback(DecodeParams params,
+                                    ConcurrentHashMap<DecodeParams, ListenableFuture<ImageBuffer>> map,
+                                    ConcurrentHashMap<Integer, DecodeParams> rois) implements FutureCallback<ImageBuffer> {
+        @Override
+        public void onSuccess(ImageBuffer result) {
+            if (map.remove(params) != null) // not cancelled meanwhile
+                cachePut(params, result, rois);
+            result.release(); // the cache holds its own reference
+        }
+
+        @Override
+        public void onFailure(@Nonnull Throwable t) {
+            map.remove(params);
+        }
     }
 
     void signalDecoderFromReader(ReadParams params) {
@@ -302,42 +483,80 @@ public class J2KView extends BaseView {
     }
 
     private void executeDecode(DecodeParams params) {
+        boolean playing = Movie.isPlaying();
+        SubImage roi = params.subImage;
         ImageBuffer imageBuffer = decodeCache.getIfPresent(params);
         if (imageBuffer == null) {
-            executor.decode(new J2KDecoder(this, params, mgn), new J2KCallback(params));
+            DecodeParams covering = getCovering(params);
+            if (covering != null && (imageBuffer = decodeCache.getIfPresent(covering)) != null)
+                roi = covering.subImage;
+        }
+        if (imageBuffer != null && imageBuffer.retain()) {
+            if (playing)
+                DecodeExecutor.countPrefetch(true);
+            sendDataToHandler(params, roi, imageBuffer);
+            imageBuffer.release();
+            return;
+        }
+
+        ListenableFuture<ImageBuffer> pending = prefetching.get(params);
+        if (pending != null) { // wait only for this one
+            if (playing)
+                DecodeExecutor.countPrefetch(true);
+            EventQueueCallbackExecutor.addCallback(pending, new J2KCallback(params, false));
         } else {
-            sendDataToHandler(params, imageBuffer);
+            if (playing)
+                DecodeExecutor.countPrefetch(false);
+            executor.decode(new J2KDecoder(this, params, mgn, true), new J2KCallback(params, true));
         }
     }
 
     private class J2KCallback extends DecodeCallback {
 
         private final DecodeParams params;
+        private final boolean owner; // holds the reference of the decoder, otherwise shares the result of a prefetch
 
-        J2KCallback(DecodeParams _params) {
+        J2KCallback(DecodeParams _params, boolean _owner) {
             params = _params;
+            owner = _owner;
         }
 
         @Override
         public void onSuccess(ImageBuffer result) {
-            if (params.complete)
-                decodeCache.put(params, result);
-            sendDataToHandler(params, result);
+            if (!owner && !result.retain()) { // already evicted and recycled
+                executor.decode(new J2KDecoder(J2KView.this, params, mgn, true), new J2KCallback(params, true));
+                return;
+            }
+            if (owner && params.complete)
+                cachePut(params, result, decodedROI);
+            sendDataToHandler(params, params.subImage, result);
+            result.release();
+        }
+
+        @Override
+        public void onFailure(@Nonnull Throwable t) {
+            if (t instanceof CancellationException) // prefetch dropped, decode now
+                executor.decode(new J2KDecoder(J2KView.this, params, mgn, true), new J2KCallback(params, true));
+            else
+                super.onFailure(t);
         }
 
     }
 
-    private void sendDataToHandler(DecodeParams decodeParams, ImageBuffer imageBuffer) {
+    // the caller holds a reference to imageBuffer, the handler takes its own; roi is the decoded region
+    private void sendDataToHandler(DecodeParams decodeParams, SubImage roi, ImageBuffer imageBuffer) {
         int frame = decodeParams.frame;
         MetaData m = metaData[frame];
-        SubImage roi = decodeParams.subImage;
         ResolutionLevel resolution = getResolutionLevel(frame, decodeParams.level);
         Region r = m.roiToRegion(roi.x, roi.y, roi.w, roi.h, resolution.factorX, resolution.factorY);
         ImageData data = new ImageData(imageBuffer, m, r, decodeParams.viewpoint);
+        shown = new Shown(frame, decodeParams.level, roi);
 
+        imageBuffer.retain();
         EventQueue.invokeLater(() -> {
             if (dataHandler != null)
                 dataHandler.handleData(data);
+            imageBuffer.release();
         });
     }
 
@@ -355,7 +574,23 @@ public class J2KView extends BaseView {
     @Nonnull
     @Override
     public String getXMLMetaData() {
-        return xmlMetaData[targetFrame];
+        int frame = targetFrame;
+        String xml = xmlMetaData[frame];
+        if (xml == null) { // metadata values from the cache
+            xml = metaKey == null ? null : JPIPCacheManager.getXML(metaKey, frame);
+            if (xml == null)
+                xml = "<meta/>";
+            xmlMetaData[frame] = xml;
+        }
+        return xml;
+    }
+
+    // the datasets of the past do not change anymore, the number of frames is checked
+    @Nullable
+    private static String getMetaKey(@Nullable APIRequest request, int numFrames) {
+        if (request == null || request.endTime() > System.currentTimeMillis() - TimeUtils.DAY_IN_MILLIS)
+            return null;
+        return request.server() + "+" + request.sourceId() + "+" + request.startTime() + "+" + request.endTime() + "+" + request.cadence() + "+" + numFrames;
     }
 
     public ResolutionLevel getResolutionLevel(int frame, int level) {
@@ -374,6 +609,10 @@ public class J2KView extends BaseView {
         return jpipCache;
     }
 
+    PlaybackGovernor getGovernor() {
+        return governor;
+    }
+
     CacheStatus getCacheStatus() {
         return cacheStatus;
     }
@@ -0,0 +1,119 @@
+package org.helioviewer.jhv.view.j2k;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.helioviewer.jhv.view.DecodeExecutor;
+import org.helioviewer.jhv.view.j2k.kakadu.KakaduThreads;
+
+// Degrades the decoding of a layer during playback to keep the movie speed: the decode latency
+// and the rate of frames arriving over JPIP are measured, each step down the ladder alternates
+// between the low quality limiter and one more discarded resolution level. Back to full quality
+// when playback stops.
+public class PlaybackGovernor {
+
+    private static final Set<PlaybackGovernor> governors = ConcurrentHashMap.newKeySet();
+
+    private static final int MAX_STEP = 5;
+    private static final long HOLD = 1000; // ms between changes
+    private static final double ALPHA = 0.2; // weight of the latest decode latency
+    private static final float LOW_FACTOR = 0.5f;
+
+    private final String name;
+
+    private double decodeMillis; // moving average
+    private long kakaduNanos; // time held of the shared Kakadu thread groups
+    private final AtomicInteger arrivals = new AtomicInteger();
+    private double arrivalRate; // frames/s
+    private long lastArrivalCheck = System.currentTimeMillis();
+
+    private volatile int step;
+    private long lastChange;
+    private volatile int level;
+    private volatile boolean playing;
+
+    PlaybackGovernor(String _name) {
+        name = _name;
+        governors.add(this);
+    }
+
+    void abolish() {
+        governors.remove(this);
+    }
+
+    // from the decoder threads
+    synchronized void decoded(long nanos, long groupNanos) {
+        kakaduNanos += groupNanos;
+        double ms = nanos / 1e6;
+        decodeMillis = decodeMillis == 0 ? ms : (1 - ALPHA) * decodeMillis + ALPHA * ms;
+    }
+
+    // from the reader threads
+    void frameArrived() {
+        arrivals.incrementAndGet();
+    }
+
+    // on the EDT, before each decode; dataComplete tells whether the reader is done with the current level
+    void update(boolean _playing, int fps, boolean dataComplete) {
+        playing = _playing;
+        if (!playing) {
+            step = 0;
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastArrivalCheck >= HOLD) {
+            arrivalRate = arrivals.getAndSet(0) * 1000. / (now - lastArrivalCheck);
+            lastArrivalCheck = now;
+        }
+        if (now - lastChange < HOLD)
+            return;
+
+        double budget = 1000. / fps;
+        double decodeCost;
+        synchronized (this) {
+            decodeCost = decodeMillis / DecodeExecutor.PREFETCH_THREADS; // decoded in parallel ahead of display
+        }
+        boolean networkBound = !dataComplete && arrivalRate < 0.9 * fps;
+
+        int newStep = step;
+        if (networkBound) // only fewer bytes help, discard one more level
+            newStep = Math.min(MAX_STEP, 2 * (step / 2 + 1));
+        else if (decodeCost > 0.8 * budget)
+            newStep = Math.min(MAX_STEP, step + 1);
+        else if (decodeCost < 0.4 * budget && (dataComplete || arrivalRate > 1.5 * fps))
+            newStep = Math.max(0, step - 1);
+
+        if (newStep != step) {
+            step = newStep;
+            lastChange = now;
+        }
+    }
+
+    int getLevelBias() {
+        return step / 2;
+    }
+
+    float getFactor() {
+        return step % 2 == 1 ? LOW_FACTOR : 1;
+    }
+
+    void setLevel(int _level) {
+        level = _level;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long busy = KakaduThreads.getHeldNanos();
+        return String.format("%s: level %d%s, %s quality, decode %.0fms, Kakadu share %.0f%%, JPIP %.1f fr/s",
+                name, level, playing && step > 0 ? " (+" + getLevelBias() + ')' : "", getFactor() < 1 ? "low" : "high", decodeMillis,
+                busy == 0 ? 0. : 100. * kakaduNanos / busy, arrivalRate);
+    }
+
+    public static String getAllStats() {
+        return governors.stream().map(PlaybackGovernor::toString).collect(Collectors.joining("<br>"));
+    }
+
+}
@@ -1,93 +1,117 @@
 package org.helioviewer.jhv.view.j2k.cache;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.annotation.Nullable;
 
 import kdu_jni.KduException;
 
 import org.helioviewer.jhv.Log;
+import org.helioviewer.jhv.gui.UITimer;
 import org.helioviewer.jhv.view.j2k.image.ResolutionSet;
 import org.helioviewer.jhv.view.j2k.kakadu.KakaduSource;
 
+// Written by the reader threads, read by the EDT and the decoders without locking;
+// completion is counted per level so that the queries are O(1)
 public class CacheStatusRemote implements CacheStatus {
 
     private final int maxFrame;
-    private final ResolutionSet[] resolutionSet;
+    private final int numLevels;
+    private final AtomicReferenceArray<ResolutionSet> resolutionSet;
 
-    private int partialUntil = 0;
+    private final AtomicInteger partialUntil = new AtomicInteger(0);
+    // per frame, the finest level which is complete, numLevels if none
+    private final AtomicIntegerArray completeLevel;
+    // per level, the number of frames complete at that level
+    private final AtomicIntegerArray completeCount;
 
     public CacheStatusRemote(KakaduSource source, int _maxFrame) throws KduException {
         maxFrame = _maxFrame;
-        resolutionSet = new ResolutionSet[maxFrame + 1];
-        resolutionSet[0] = source.getResolutionSet(0);
+        resolutionSet = new AtomicReferenceArray<>(maxFrame + 1);
+
+        ResolutionSet first = source.getResolutionSet(0);
+        resolutionSet.set(0, first);
+        numLevels = first.numLevels;
+
+        completeLevel = new AtomicIntegerArray(maxFrame + 1);
+        for (int i = 0; i <= maxFrame; i++)
+            completeLevel.set(i, numLevels);
+        completeCount = new AtomicIntegerArray(numLevels);
     }
 
     @Override
     public int getPartialUntil() {
-        int i;
-        for (i = partialUntil; i <= maxFrame; i++) {
-            if (resolutionSet[i] == null)
-                break;
-        }
-        partialUntil = Math.max(0, i - 1);
-        return partialUntil;
+        return partialUntil.get();
     }
 
     @Override
     public ResolutionSet getResolutionSet(int frame) {
-        if (resolutionSet[frame] == null) {
+        ResolutionSet set = resolutionSet.get(frame);
+        if (set == null) {
             Log.error("resolutionSet[" + frame + "] is null"); // never happened?
-            return resolutionSet[0];
+            return resolutionSet.get(0);
         }
-        return resolutionSet[frame];
+        return set;
     }
 
-    private boolean fullyComplete;
     private static final AtomicBoolean full = new AtomicBoolean(true);
 
+    private int clampLevel(int level) {
+        return Math.min(level, numLevels - 1);
+    }
+
     @Override
     public boolean isComplete(int level) {
-        if (fullyComplete)
-            return true;
-
-        for (int i = 0; i <= maxFrame; i++) {
-            if (resolutionSet[i] == null)
-                return false;
-            AtomicBoolean status = resolutionSet[i].getComplete(level);
-            if (status == null || !status.get())
-                return false;
-        }
-        if (level == 0)
-            fullyComplete = true;
-        return true;
+        return completeCount.get(clampLevel(level)) == maxFrame + 1;
     }
 
     @Nullable
     @Override
     public AtomicBoolean getFrameStatus(int frame, int level) {
-        if (fullyComplete)
+        if (isComplete(0))
             return full;
-        if (resolutionSet[frame] == null)
-            return null;
-        return resolutionSet[frame].getComplete(level);
+        ResolutionSet set = resolutionSet.get(frame);
+        return set == null ? null : set.getComplete(level);
     }
 
     @Override
     public void setFrameComplete(KakaduSource source, int frame, int level) throws KduException {
-        if (fullyComplete)
-            return;
-
         setFramePartial(source, frame);
-        if (resolutionSet[frame] != null)
-            resolutionSet[frame].setComplete(level);
+
+        level = clampLevel(level);
+        int old;
+        do {
+            old = completeLevel.get(frame);
+            if (old <= level) // nothing new
+                return;
+        } while (!completeLevel.compareAndSet(frame, old, level));
+
+        resolutionSet.get(frame).setComplete(level);
+        // complete at level implies complete at the coarser ones
+        for (int i = level; i < old; i++)
+            completeCount.incrementAndGet(i);
+        UITimer.cacheStatusChanged(frame);
     }
 
     @Override
     public void setFramePartial(KakaduSource source, int frame) throws KduException {
-        if (resolutionSet[frame] == null) {
-            resolutionSet[frame] = source.getResolutionSet(frame);
+        if (resolutionSet.get(frame) != null)
+            return;
+        synchronized (this) { // only the first time for each frame, the source is not thread-safe
+            if (resolutionSet.get(frame) != null) // another reader was faster
+                return;
+            resolutionSet.set(frame, source.getResolutionSet(frame));
+        }
+
+        // advance over the contiguous run of known frames
+        int until;
+        while ((until = partialUntil.get()) < maxFrame && resolutionSet.get(until + 1) != null) {
+            partialUntil.compareAndSet(until, until + 1);
         }
+        UITimer.cacheStatusChanged(frame);
     }
 
 }
@@ -8,7 +8,7 @@ public class ResolutionSet {
     // The indices represent the number of discardLayers
     private final ResolutionLevel[] resolutions;
     private final AtomicBoolean[] complete;
-    private final int numLevels;
+    public final int numLevels;
     public final int numComps;
 
     public ResolutionSet(int _numLevels, int _numComps) {
@@ -34,6 +34,10 @@ public class SubImage {
         hash = computeHash(x, y, w, h);
     }
 
+    public boolean contains(SubImage s) {
+        return x <= s.x && y <= s.y && x + w >= s.x + s.w && y + h >= s.y + s.h;
+    }
+
     private static int computeHash(int _x, int _y, int _w, int _h) {
         int result = 31 + _x;
         result = 31 * result + _y;
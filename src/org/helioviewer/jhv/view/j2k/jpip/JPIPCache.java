@@ -14,10 +14,6 @@ public class JPIPCache extends Kdu_cache {
         return complete[0];
     }
 
-    private void addToKdu(int frame, JPIPSegment data) throws KduException {
-        Add_to_databin(data.klassID, frame, data.binID, data.data, data.offset, data.length, data.isFinal, true, false);
-    }
-
     private JPIPStream scan(int frame) throws KduException {
         int flags = Kdu_global.KDU_CACHE_SCAN_START | Kdu_global.KDU_CACHE_SCAN_FIX_CODESTREAM;
         int[] klassID = new int[1];
@@ -27,34 +23,29 @@ public class JPIPCache extends Kdu_cache {
         boolean[] complete = new boolean[1];
 
         JPIPStream stream = new JPIPStream();
+        byte[] data = new byte[0];
         while (Scan_databins(flags, klassID, codestreamID, binID, binLen, complete, null, 0)) {
             if (klassID[0] == KakaduConstants.KDU_META_DATABIN)
                 continue;
 
             flags &= ~Kdu_global.KDU_CACHE_SCAN_START;
-            byte[] data = new byte[binLen[0]];
+            if (data.length < binLen[0])
+                data = new byte[Math.max(binLen[0], 2 * data.length)];
             if (!Scan_databins(flags | Kdu_global.KDU_CACHE_SCAN_NO_ADVANCE, klassID, codestreamID, binID, binLen, complete, data, binLen[0]))
                 break;
 
-            JPIPSegment seg = new JPIPSegment();
-            seg.binID = binID[0];
-            seg.klassID = klassID[0];
-            seg.codestreamID = codestreamID[0];
-            seg.length = binLen[0];
-            seg.data = data;
-            seg.isFinal = complete[0];
-            stream.segments.add(seg);
+            stream.add(klassID[0], binID[0], 0, data, binLen[0], complete[0]);
         }
         return stream;
     }
 
-    void put(int frame, JPIPSegment seg) throws KduException {
-        addToKdu(frame, seg);
+    void put(int frame, int klassID, long binID, byte[] data, int offset, int length, boolean isFinal) throws KduException {
+        Add_to_databin(klassID, frame, binID, data, offset, length, isFinal, true, false);
     }
 
     public void put(int frame, JPIPStream stream) throws KduException {
-        for (JPIPSegment seg : stream.segments)
-            addToKdu(frame, seg);
+        stream.forEach((klassID, binID, offset, data, length, isFinal) ->
+                Add_to_databin(klassID, frame, binID, data, offset, length, isFinal, true, false));
     }
 
     @Nullable
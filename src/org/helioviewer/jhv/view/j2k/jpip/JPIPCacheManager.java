@@ -1,7 +1,13 @@
 package org.helioviewer.jhv.view.j2k.jpip;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -11,6 +17,7 @@ import javax.annotation.Nullable;
 import org.helioviewer.jhv.JHVDirectory;
 import org.helioviewer.jhv.Log;
 import org.helioviewer.jhv.io.FileUtils;
+import org.helioviewer.jhv.threads.JHVThread;
 
 import org.ehcache.Cache;
 import org.ehcache.PersistentCacheManager;
@@ -29,15 +36,25 @@ public class JPIPCacheManager {
     }
 
     private static final Path levelCacheDir = Path.of(JHVDirectory.CACHE.getPath(), "JPIPLevel-4");
-    private static final Path streamCacheDir = Path.of(JHVDirectory.CACHE.getPath(), "JPIPStream-4");
+    private static final Path streamCacheDir = Path.of(JHVDirectory.CACHE.getPath(), "JPIPStream-5");
+    private static final Path legacyStreamCacheDir = Path.of(JHVDirectory.CACHE.getPath(), "JPIPStream-4");
+    private static final Path metaCacheDir = Path.of(JHVDirectory.CACHE.getPath(), "JPIPMeta-1");
 
     private static PersistentCacheManager levelManager;
     private static PersistentCacheManager streamManager;
+    private static PersistentCacheManager metaManager;
     private static Cache<String, Integer> levelCache;
     private static Cache<String, JPIPStream> streamCache;
+    private static Cache<String, JPIPMetaData> metaCache;
     private static Thread hook;
+    private static Thread migration;
 
-    public static void init() {
+    private static final ExecutorService metaWriter = Executors.newSingleThreadExecutor(new JHVThread.NamedThreadFactory("JPIPMeta Write"));
+
+    // does nothing if already open
+    public static synchronized void init() {
+        if (streamManager != null)
+            return;
         deleteDirs("JPIPLevel-3", "JPIPStream-3"); // delete one previous version
 
         ExpiryPolicy<Object, Object> expiryPolicy = ExpiryPolicyBuilder.timeToIdleExpiration(Duration.ofDays(7));
@@ -57,6 +74,17 @@ public class JPIPCacheManager {
                         .newCacheConfigurationBuilder(String.class, JPIPStream.class,
                                 ResourcePoolsBuilder.newResourcePoolsBuilder()
                                         .disk(8, MemoryUnit.GB, true))
+                        .withValueSerializer(new JPIPStreamSerializer())
+                        .withExpiry(expiryPolicy))
+                .build(true);
+        metaManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .with(CacheManagerBuilder.persistence(metaCacheDir.toString()))
+                .withCache("JPIPMeta", CacheConfigurationBuilder
+                        .newCacheConfigurationBuilder(String.class, JPIPMetaData.class,
+                                ResourcePoolsBuilder.newResourcePoolsBuilder()
+                                        .heap(10, EntryUnit.ENTRIES)
+                                        .disk(256, MemoryUnit.MB, true))
+                        .withValueSerializer(new JPIPMetaDataSerializer())
                         .withExpiry(expiryPolicy))
                 .build(true);
 
@@ -67,6 +95,66 @@ public class JPIPCacheManager {
 
         streamCache = streamManager.getCache("JPIPStream", String.class, JPIPStream.class);
         levelCache = levelManager.getCache("JPIPLevel", String.class, Integer.class);
+        metaCache = metaManager.getCache("JPIPMeta", String.class, JPIPMetaData.class);
+
+        if (Files.isDirectory(legacyStreamCacheDir)) {
+            migration = new Thread(JPIPCacheManager::migrateLegacy, "JPIPStream migration");
+            migration.setDaemon(true);
+            migration.start();
+        }
+    }
+
+    private static void stopMigration() {
+        if (migration != null) {
+            migration.interrupt();
+            try {
+                migration.join();
+            } catch (InterruptedException ignore) {
+            }
+            migration = null;
+        }
+    }
+
+    // Converts the Java-serialized JPIPStream-4 cache to the binary format, the level cache is unchanged
+    private static void migrateLegacy() {
+        try {
+            long oldSize = FileUtils.diskUsage(legacyStreamCacheDir);
+            long legacyNanos = 0;
+            ArrayList<String> keys = new ArrayList<>();
+
+            try (PersistentCacheManager legacyManager = CacheManagerBuilder.newCacheManagerBuilder()
+                    .with(CacheManagerBuilder.persistence(legacyStreamCacheDir.toString()))
+                    .withCache("JPIPStream", CacheConfigurationBuilder
+                            .newCacheConfigurationBuilder(String.class, JPIPStream.class,
+                                    ResourcePoolsBuilder.newResourcePoolsBuilder()
+                                            .disk(8, MemoryUnit.GB, true)))
+                    .build(true)) {
+                Cache<String, JPIPStream> legacyCache = legacyManager.getCache("JPIPStream", String.class, JPIPStream.class);
+                Cache<String, JPIPStream> cache = streamCache;
+                for (String key : legacyKeys(legacyCache)) {
+                    if (Thread.currentThread().isInterrupted()) // stopped by clear, the legacy directory goes as well
+                        return;
+                    long start = System.nanoTime();
+                    JPIPStream stream = legacyCache.get(key);
+                    legacyNanos += System.nanoTime() - start;
+
+                    if (stream != null && stream.isLegacy() && cache.putIfAbsent(key, JPIPStream.fromLegacy(stream)) == null)
+                        keys.add(key);
+                }
+            }
+            deleteDirs(legacyStreamCacheDir.getFileName().toString());
+
+            // compare the load time of the two formats over the same entries
+            long start = System.nanoTime();
+            for (String key : keys)
+                streamCache.get(key);
+            long nanos = System.nanoTime() - start;
+
+            Log.info(String.format("Migrated %d streams: load %dms -> %dms, disk usage %.1fMB -> %.1fMB",
+                    keys.size(), legacyNanos / 1000000, nanos / 1000000, oldSize / (1024 * 1024.), FileUtils.diskUsage(streamCacheDir) / (1024 * 1024.)));
+        } catch (Exception e) { // leave the rest behind, next start retries
+            Log.warn(e);
+        }
     }
 
     @Nullable
@@ -93,6 +181,52 @@ public class JPIPCacheManager {
         }
     }
 
+    // the metadata values of each frame of a dataset, null if not kept or of a different number of frames
+    @Nullable
+    public static List<Map<String, String>> getMetaData(@Nonnull String key, int numFrames) {
+        try {
+            if (metaCache.get(key) instanceof JPIPMetaData.Frames metaData && metaData.frames().size() == numFrames)
+                return metaData.frames();
+        } catch (Exception e) {
+            Log.error(e);
+        }
+        return null;
+    }
+
+    // the XML of the frames is kept one entry per frame in the same cache, to be read back only when displayed;
+    // written in the background, the values last so that they are found only when complete
+    public static void putMetaData(@Nonnull String key, @Nonnull List<Map<String, String>> frames, @Nonnull String[] xml) {
+        metaWriter.execute(() -> {
+            try {
+                for (int i = 0; i < xml.length; i++) {
+                    if (xml[i] != null)
+                        metaCache.put(key + "+" + i, new JPIPMetaData.XML(xml[i]));
+                }
+                metaCache.put(key, new JPIPMetaData.Frames(frames));
+            } catch (Exception e) {
+                Log.error(e);
+            }
+        });
+    }
+
+    @Nullable
+    public static String getXML(@Nonnull String key, int frame) {
+        try {
+            if (metaCache.get(key + "+" + frame) instanceof JPIPMetaData.XML entry)
+                return entry.xml();
+        } catch (Exception e) {
+            Log.error(e);
+        }
+        return null;
+    }
+
+    private static ArrayList<String> legacyKeys(Cache<String, JPIPStream> legacyCache) {
+        ArrayList<String> keys = new ArrayList<>();
+        for (Cache.Entry<String, JPIPStream> entry : legacyCache)
+            keys.add(entry.getKey());
+        return keys;
+    }
+
     private static void deleteDirs(String... dirs) {
         for (String dir : dirs) { // delete old versions
             try {
@@ -106,19 +240,27 @@ public class JPIPCacheManager {
         try {
             levelManager.close();
             streamManager.close();
+            metaManager.close();
         } catch (Exception e) {
             Log.error(e);
         }
     }
 
-    public static void clear() {
+    // the migration is stopped first, as it writes to the stream cache
+    public static synchronized void clear() {
+        stopMigration();
         close();
         try {
             levelManager.destroy();
             streamManager.destroy();
+            metaManager.destroy();
         } catch (Exception e) {
             Log.error(e);
         }
+        levelManager = null;
+        streamManager = null;
+        metaManager = null;
+        deleteDirs(legacyStreamCacheDir.getFileName().toString());
         init();
     }
 
@@ -127,6 +269,9 @@ public class JPIPCacheManager {
         try {
             size += FileUtils.diskUsage(levelCacheDir);
             size += FileUtils.diskUsage(streamCacheDir);
+            size += FileUtils.diskUsage(metaCacheDir);
+            if (Files.isDirectory(legacyStreamCacheDir))
+                size += FileUtils.diskUsage(legacyStreamCacheDir);
         } catch (Exception e) {
             Log.error(e);
         }
@@ -0,0 +1,16 @@
+package org.helioviewer.jhv.view.j2k.jpip;
+
+import java.util.List;
+import java.util.Map;
+
+// The entries of the metadata cache: per dataset, the values of the XML metadata of each frame,
+// null where a frame has none; per frame, the XML itself, read back only when displayed
+sealed interface JPIPMetaData {
+
+    record Frames(List<Map<String, String>> frames) implements JPIPMetaData {
+    }
+
+    record XML(String xml) implements JPIPMetaData {
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.helioviewer.jhv.view.j2k.jpip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+
+// A tag byte, then the XML as UTF-8 bytes, or a table of the distinct strings, the keys and many
+// of the values repeat over the frames, followed by the frames as pairs of indices into it
+class JPIPMetaDataSerializer implements Serializer<JPIPMetaData> {
+
+    private static final int NULL = -1;
+    private static final byte FRAMES = 0;
+    private static final byte XML = 1;
+
+    @Override
+    public ByteBuffer serialize(JPIPMetaData entry) {
+        if (entry instanceof JPIPMetaData.XML xml) {
+            byte[] utf8 = xml.xml().getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(1 + utf8.length).put(XML).put(utf8).flip();
+        }
+
+        JPIPMetaData.Frames metaData = (JPIPMetaData.Frames) entry;
+        HashMap<String, Integer> index = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        for (Map<String, String> frame : metaData.frames()) {
+            if (frame == null)
+                continue;
+            frame.forEach((key, value) -> {
+                if (index.putIfAbsent(key, strings.size()) == null)
+                    strings.add(key);
+                if (value != null && index.putIfAbsent(value, strings.size()) == null)
+                    strings.add(value);
+            });
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FRAMES);
+            out.writeInt(strings.size());
+            for (String s : strings)
+                out.writeUTF(s);
+
+            out.writeInt(metaData.frames().size());
+            for (Map<String, String> frame : metaData.frames()) {
+                if (frame == null) {
+                    out.writeInt(NULL);
+                    continue;
+                }
+                out.writeInt(frame.size());
+                for (Map.Entry<String, String> e : frame.entrySet()) {
+                    out.writeInt(index.get(e.getKey()));
+                    out.writeInt(e.getValue() == null ? NULL : index.get(e.getValue()));
+                }
+            }
+        } catch (IOException e) {
+            throw new SerializerException(e);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    @Override
+    public JPIPMetaData read(ByteBuffer binary) {
+        byte tag = binary.get();
+        byte[] array = new byte[binary.remaining()];
+        binary.get(array);
+        if (tag == XML)
+            return new JPIPMetaData.XML(new String(array, StandardCharsets.UTF_8));
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(array))) {
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = in.readUTF();
+
+            int numFrames = in.readInt();
+            ArrayList<Map<String, String>> frames = new ArrayList<>(numFrames);
+            for (int i = 0; i < numFrames; i++) {
+                int size = in.readInt();
+                if (size == NULL) {
+                    frames.add(null);
+                    continue;
+                }
+                HashMap<String, String> frame = new HashMap<>(size * 2);
+                for (int j = 0; j < size; j++) {
+                    String key = strings[in.readInt()];
+                    int value = in.readInt();
+                    frame.put(key, value == NULL ? null : strings[value]);
+                }
+                frames.add(frame);
+            }
+            return new JPIPMetaData.Frames(frames);
+        } catch (IOException e) {
+            throw new SerializerException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(JPIPMetaData metaData, ByteBuffer binary) {
+        return metaData.equals(read(binary));
+    }
+
+}
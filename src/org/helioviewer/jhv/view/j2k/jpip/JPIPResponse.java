@@ -2,8 +2,8 @@ package org.helioviewer.jhv.view.j2k.jpip;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.ProtocolException;
+import java.nio.ByteBuffer;
 
 import javax.annotation.Nullable;
 
@@ -42,10 +42,17 @@ public class JPIPResponse {
     // The first byte of the last VBAS read
     private int vbasFstByte = 0;
 
-    // Reads an VBAS integer from the stream. The length in bytes of the VBAS is
+    // The length of the response body
+    private int size;
+
+    public int getSize() {
+        return size;
+    }
+
+    // Reads an VBAS integer from the buffer. The length in bytes of the VBAS is
     // stored in the vbasLength variable, and the first byte of the
     // VBAS is stored in the vbasFstByte variable.
-    private long readVBAS(InputStream in) throws IOException {
+    private long readVBAS(ByteBuffer in) throws IOException {
         vbasLength = 0;
         long value = 0;
         int c;
@@ -53,12 +60,13 @@ public class JPIPResponse {
             if (vbasLength >= 9)
                 throw new ProtocolException("VBAS length not supported");
 
-            if ((c = in.read()) < 0) {
+            if (!in.hasRemaining()) {
                 if (vbasLength > 0)
                     throw new EOFException("EOF reached before completing VBAS");
                 else
                     return -1;
             }
+            c = in.get() & 0xFF;
 
             value = (value << 7) | (long) (c & 0x7F);
 
@@ -70,24 +78,20 @@ public class JPIPResponse {
         return value;
     }
 
-    // Reads the next data segment from the stream, and stores its information
-    // in the JPIPSegment object passed as parameter. The data
-    // buffer is not reallocated every time. It is only reallocated if the next
-    // data length is bigger than the previous one.
-    @Nullable
-    private JPIPSegment readSegment(InputStream in) throws IOException {
+    // Reads the next message header from the buffer into seg, which is reused for all the
+    // messages; the buffer is left positioned at the message body. Returns false at the end.
+    private boolean readHeader(ByteBuffer in, JPIPSegment seg) throws IOException {
         long id;
         if ((id = readVBAS(in)) < 0)
-            return null;
+            return false;
 
-        JPIPSegment seg = new JPIPSegment();
         seg.binID = id;
-
         if (vbasFstByte == 0) {
             seg.isEOR = true;
 
-            if ((seg.binID = in.read()) < 0)
+            if (!in.hasRemaining())
                 throw new EOFException("EOF reached before completing EOR message");
+            seg.binID = in.get() & 0xFF;
 
             seg.length = (int) readVBAS(in);
         } else {
@@ -117,31 +121,31 @@ public class JPIPResponse {
                 seg.aux = readVBAS(in);
         }
 
-        if (seg.length > 0) {
-            seg.data = new byte[seg.length];
-
-            int offset = 0;
-            int len = seg.length;
-            while (len != 0) {
-                int read = in.read(seg.data, offset, len);
-                if (read == -1)
-                    throw new EOFException("Unexpected EOF");
-                len -= read;
-                offset += read;
-            }
-        }
-
-        return seg;
+        if (seg.length < 0 || seg.length > in.remaining())
+            throw new EOFException("Unexpected EOF");
+        return true;
     }
 
-    public void readSegments(InputStream in, JPIPCache cache, int frame) throws KduException, IOException {
-        JPIPSegment seg;
-        while ((seg = readSegment(in)) != null) {
+    // the Kakadu cache takes arrays, one scratch array per reader thread
+    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    public void readSegments(ByteBuffer in, JPIPCache cache, int frame) throws KduException, IOException {
+        size = in.remaining();
+
+        JPIPSegment seg = new JPIPSegment();
+        while (readHeader(in, seg)) {
             if (seg.isEOR)
                 status = seg.binID;
             else if (seg.isFinal || seg.length > 0) { // avoid pointless segments
-                cache.put(frame, seg);
+                byte[] data = scratch.get();
+                if (data.length < seg.length) {
+                    data = new byte[Math.max(seg.length, 2 * data.length)];
+                    scratch.set(data);
+                }
+                in.get(in.position(), data, 0, seg.length);
+                cache.put(frame, seg.klassID, seg.binID, data, seg.offset, seg.length, seg.isFinal);
             }
+            in.position(in.position() + seg.length);
         }
     }
 
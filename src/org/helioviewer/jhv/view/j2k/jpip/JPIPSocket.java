@@ -1,7 +1,6 @@
 package org.helioviewer.jhv.view.j2k.jpip;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.util.HashMap;
 
@@ -9,10 +8,10 @@ import kdu_jni.KduException;
 
 import org.helioviewer.jhv.base.Regex;
 import org.helioviewer.jhv.view.j2k.jpip.http.HTTPMessage;
-import org.helioviewer.jhv.view.j2k.jpip.http.HTTPSocket;
+import org.helioviewer.jhv.view.j2k.jpip.http.HTTPTransport;
 
 // Assumes a persistent HTTP connection
-public final class JPIPSocket extends HTTPSocket {
+public final class JPIPSocket {
 
     private static final String[] cnewParams = {"cid", "transport", "host", "path", "port", "auxport"};
 
@@ -24,8 +23,13 @@ public final class JPIPSocket extends HTTPSocket {
     // could change it. The Kakadu server seems to change it to /jpip.
     private String jpipPath;
 
-    public JPIPSocket(URI uri, JPIPCache cache) throws KduException, IOException {
-        super(uri);
+    private final URI uri;
+    private volatile HTTPTransport http;
+    private volatile boolean closing;
+
+    public JPIPSocket(URI _uri, JPIPCache cache) throws KduException, IOException {
+        uri = _uri;
+        http = HTTPTransport.open(uri);
 
         jpipPath = uri.getPath();
 
@@ -50,8 +54,8 @@ public final class JPIPSocket extends HTTPSocket {
     }
 
     // Closes the JPIPChannel
-    @Override
     public void close() throws IOException {
+        closing = true;
         if (isClosed())
             return;
 
@@ -60,32 +64,67 @@ public final class JPIPSocket extends HTTPSocket {
                 writeRequest(JPIPQuery.create(0, "cclose", jpipChannelID));
         } catch (IOException ignore) { // no problem, server may have closed the socket
         } finally {
-            super.close();
+            http.close();
         }
     }
 
+    public boolean isClosed() {
+        return http.isClosed();
+    }
+
     private void writeRequest(String queryStr) throws IOException {
         // Add a necessary JPIP request field
         if (jpipChannelID != null && !queryStr.contains("cid=") && !queryStr.contains("cclose"))
             queryStr += "&cid=" + jpipChannelID;
-        write("GET " + jpipPath + '?' + queryStr + httpHeader);
+        http.writeGet(jpipPath + '?' + queryStr);
     }
 
-    public JPIPResponse request(String queryStr, JPIPCache cache, int frame) throws KduException, IOException {
-        writeRequest(queryStr);
-        HTTPMessage res = readHeader();
+    private JPIPResponse readResponse(JPIPCache cache, int frame) throws KduException, IOException {
+        HTTPMessage res = http.readHeader();
         if (!"image/jpp-stream".equals(res.getHeader("Content-Type")))
             throw new IOException("Expected image/jpp-stream content");
 
         JPIPResponse jpipRes = new JPIPResponse(res.getHeader("JPIP-cnew"));
-        try (InputStream in = getInputStream(res)) {
-            jpipRes.readSegments(in, cache, frame);
-        }
+        jpipRes.readSegments(http.readBody(res), cache, frame);
 
         if ("close".equals(res.getHeader("Connection"))) {
-            super.close();
+            http.close();
         }
         return jpipRes;
     }
 
+    public JPIPResponse request(String queryStr, JPIPCache cache, int frame) throws KduException, IOException {
+        writeRequest(queryStr);
+        return readResponse(cache, frame);
+    }
+
+    // Pipelined: all the requests are written before reading the responses, in the same order.
+    // With wait=yes the server answers each of them completely instead of preempting it for the
+    // next one. If the server closes the connection midway, the requests left unanswered are sent
+    // again on a new connection of the same channel.
+    public JPIPResponse[] request(String[] queryStrs, int[] frames, JPIPCache cache) throws KduException, IOException {
+        JPIPResponse[] res = new JPIPResponse[queryStrs.length];
+        int answered = 0;
+        while (answered < res.length) {
+            if (http.isClosed()) {
+                if (closing)
+                    throw new IOException("JPIP socket closed");
+                http = HTTPTransport.open(uri);
+            }
+            int written = answered;
+            try {
+                for (; written < res.length; written++)
+                    writeRequest(queryStrs[written] + "&wait=yes");
+            } catch (IOException e) { // the server may have closed after answering the first ones
+                if (written == answered)
+                    throw e;
+            }
+            do {
+                res[answered] = readResponse(cache, frames[answered]);
+                answered++;
+            } while (answered < written && !http.isClosed());
+        }
+        return res;
+    }
+
 }
@@ -2,13 +2,125 @@ package org.helioviewer.jhv.view.j2k.jpip;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
+import kdu_jni.KduException;
+
+// The data-bins of one codestream laid out contiguously in a buffer, direct while being written.
+// Each segment is a header of unsigned LEB128 varints (klassID << 1 | isFinal, binID, offset, length)
+// followed by the payload, so a stream can be fed to the Kakadu cache without creating
+// an object per segment.
 public class JPIPStream implements Serializable {
 
     @Serial
     private static final long serialVersionUID = JPIPSegment.serialVersionUID;
 
-    final ArrayList<JPIPSegment> segments = new ArrayList<>();
+    static final int MAX_HEADER = 4 * 10;
+
+    interface SegmentConsumer {
+        void accept(int klassID, long binID, int offset, byte[] data, int length, boolean isFinal) throws KduException;
+    }
+
+    // only populated when deserializing the legacy JPIPStream-4 cache
+    @SuppressWarnings("unused")
+    private ArrayList<JPIPSegment> segments;
+
+    private transient ByteBuffer buffer;
+
+    JPIPStream() {
+        this(64 * 1024);
+    }
+
+    private JPIPStream(int capacity) {
+        this(ByteBuffer.allocateDirect(capacity));
+    }
+
+    private JPIPStream(ByteBuffer _buffer) {
+        buffer = _buffer;
+    }
+
+    // a heap copy, streams read from the cache are mostly only fed to Kakadu
+    static JPIPStream wrap(ByteBuffer binary) {
+        JPIPStream stream = new JPIPStream(ByteBuffer.allocate(binary.remaining()));
+        stream.buffer.put(binary);
+        return stream;
+    }
+
+    // converts the Java-serialized form of the legacy cache
+    static JPIPStream fromLegacy(JPIPStream legacy) {
+        JPIPStream stream = new JPIPStream();
+        if (legacy.segments != null) {
+            for (JPIPSegment seg : legacy.segments)
+                stream.add(seg.klassID, seg.binID, seg.offset, seg.data, seg.length, seg.isFinal);
+        }
+        return stream;
+    }
+
+    boolean isLegacy() {
+        return buffer == null;
+    }
+
+    void add(int klassID, long binID, int offset, byte[] data, int length, boolean isFinal) {
+        ensure(MAX_HEADER + length);
+        putVar(buffer, ((long) klassID << 1) | (isFinal ? 1 : 0));
+        putVar(buffer, binID);
+        putVar(buffer, offset);
+        putVar(buffer, length);
+        if (length > 0)
+            buffer.put(data, 0, length);
+    }
+
+    void forEach(SegmentConsumer consumer) throws KduException {
+        ByteBuffer buf = buffer.duplicate().flip();
+        byte[] data = new byte[0];
+        while (buf.hasRemaining()) {
+            long klass = getVar(buf);
+            long binID = getVar(buf);
+            int offset = (int) getVar(buf);
+            int length = (int) getVar(buf);
+            if (data.length < length)
+                data = new byte[Math.max(length, 2 * data.length)];
+            buf.get(data, 0, length);
+            consumer.accept((int) (klass >>> 1), binID, offset, data, length, (klass & 1) != 0);
+        }
+    }
+
+    // read-only view of the written part
+    ByteBuffer asBuffer() {
+        return buffer.duplicate().flip().asReadOnlyBuffer();
+    }
+
+    int size() {
+        return buffer.position();
+    }
+
+    private void ensure(int n) {
+        if (buffer.remaining() < n) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(2 * buffer.capacity(), buffer.position() + n));
+            larger.put(buffer.flip());
+            buffer = larger;
+        }
+    }
+
+    private static void putVar(ByteBuffer buf, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    private static long getVar(ByteBuffer buf) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
 
 }
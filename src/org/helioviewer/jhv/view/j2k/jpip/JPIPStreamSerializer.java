@@ -0,0 +1,25 @@
+package org.helioviewer.jhv.view.j2k.jpip;
+
+import java.nio.ByteBuffer;
+
+import org.ehcache.spi.serialization.Serializer;
+
+// Stores the contiguous layout of JPIPStream as is, instead of Java serialization
+class JPIPStreamSerializer implements Serializer<JPIPStream> {
+
+    @Override
+    public ByteBuffer serialize(JPIPStream stream) {
+        return stream.asBuffer();
+    }
+
+    @Override
+    public JPIPStream read(ByteBuffer binary) {
+        return JPIPStream.wrap(binary);
+    }
+
+    @Override
+    public boolean equals(JPIPStream stream, ByteBuffer binary) {
+        return stream.asBuffer().equals(binary);
+    }
+
+}
@@ -0,0 +1,208 @@
+package org.helioviewer.jhv.view.j2k.jpip.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+// HTTP/1.1 over a non-blocking SocketChannel. The header and the chunked framing are parsed in place
+// from a direct receive buffer and the body is assembled into a direct buffer reused for all the
+// responses of the connection; large chunks are read from the channel straight into the body.
+// The content is expected with identity encoding, JPIP streams are compressed already.
+class HTTPChannel implements HTTPTransport {
+
+    private static final int RECEIVE_SIZE = 256 * 1024;
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final String httpHeader;
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(RECEIVE_SIZE).flip(); // kept in read mode
+    private ByteBuffer body = ByteBuffer.allocateDirect(RECEIVE_SIZE);
+
+    HTTPChannel(URI uri) throws IOException {
+        String host = uri.getHost();
+        int port = uri.getPort() <= 0 ? 80 : uri.getPort();
+
+        channel = SocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, Math.max(262144 * 8, 2 * channel.getOption(StandardSocketOptions.SO_RCVBUF)));
+            channel.setOption(StandardSocketOptions.IP_TOS, 0x10);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.socket().connect(new InetSocketAddress(host, port), HTTPSocket.TIMEOUT_CONNECT);
+            channel.configureBlocking(false);
+
+            selector = Selector.open();
+            key = channel.register(selector, 0);
+        } catch (Exception e) { // redirect all to IOException
+            channel.close();
+            throw e instanceof IOException ioe ? ioe : new IOException(e);
+        }
+        httpHeader = HTTPSocket.createHeader(host, port, false);
+    }
+
+    private void await(int ops) throws IOException {
+        int ready;
+        try {
+            key.interestOps(ops);
+            ready = selector.select(HTTPSocket.TIMEOUT_READ);
+        } catch (CancelledKeyException | ClosedSelectorException e) { // closed from another thread
+            throw new ClosedChannelException();
+        }
+        if (ready == 0) {
+            if (!channel.isOpen())
+                throw new ClosedChannelException();
+            throw new SocketTimeoutException("Read timed out");
+        }
+        selector.selectedKeys().clear();
+    }
+
+    // makes more bytes available in the receive buffer
+    private void fill() throws IOException {
+        in.compact();
+        try {
+            if (!in.hasRemaining())
+                throw new ProtocolException("HTTP line too long");
+            int read;
+            while ((read = channel.read(in)) == 0)
+                await(SelectionKey.OP_READ);
+            if (read < 0)
+                throw new EOFException("Connection closed by server");
+        } finally {
+            in.flip();
+        }
+    }
+
+    private String readLine() throws IOException {
+        int from = in.position();
+        while (true) {
+            for (int i = from; i < in.limit(); i++) {
+                if (in.get(i) == '\n') {
+                    byte[] line = new byte[i - in.position()];
+                    in.get(line).get(); // skip LF
+                    return new String(line, StandardCharsets.US_ASCII).trim();
+                }
+            }
+            from = in.limit() - in.position(); // relative to the compacted buffer
+            fill();
+        }
+    }
+
+    // appends len bytes of payload to the body
+    private void readPayload(int len) throws IOException {
+        if (body.remaining() < len) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(2 * body.capacity(), body.position() + len));
+            body = larger.put(body.flip());
+        }
+
+        int buffered = Math.min(len, in.remaining());
+        body.put(in.slice(in.position(), buffered));
+        in.position(in.position() + buffered);
+        len -= buffered;
+
+        if (len > 0) { // the rest directly from the channel
+            int limit = body.limit();
+            body.limit(body.position() + len);
+            try {
+                while (body.hasRemaining()) {
+                    int read = channel.read(body);
+                    if (read < 0)
+                        throw new EOFException("Unexpected EOF");
+                    if (read == 0)
+                        await(SelectionKey.OP_READ);
+                }
+            } finally {
+                body.limit(limit);
+            }
+        }
+    }
+
+    @Override
+    public void writeGet(String target) throws IOException {
+        ByteBuffer out = StandardCharsets.UTF_8.encode("GET " + target + httpHeader);
+        while (out.hasRemaining()) {
+            if (channel.write(out) == 0)
+                await(SelectionKey.OP_WRITE);
+        }
+    }
+
+    @Override
+    public HTTPMessage readHeader() throws IOException {
+        HTTPMessage.checkStatus(readLine());
+
+        HTTPMessage res = new HTTPMessage();
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            res.parseField(line);
+        }
+        return res;
+    }
+
+    @Override
+    public ByteBuffer readBody(HTTPMessage msg) throws IOException {
+        String contentEncoding = msg.getHeader("Content-Encoding");
+        if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding))
+            throw new IOException("Unexpected content encoding: " + contentEncoding);
+
+        body.clear();
+        String transferEncoding = msg.getHeader("Transfer-Encoding");
+        if (transferEncoding == null || "identity".equalsIgnoreCase(transferEncoding)) {
+            String contentLength = msg.getHeader("Content-Length");
+            int len;
+            try {
+                len = Integer.parseInt(contentLength);
+            } catch (Exception e) {
+                throw new IOException("Invalid Content-Length header: " + contentLength);
+            }
+            readPayload(len);
+        } else if ("chunked".equalsIgnoreCase(transferEncoding)) {
+            while (true) {
+                String line = readLine();
+                int len;
+                try {
+                    len = Integer.parseInt(line, 16);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Invalid chunk length format");
+                }
+                if (len <= 0)
+                    break;
+                readPayload(len);
+                if (!readLine().isEmpty())
+                    throw new ProtocolException("CRLF expected after chunk");
+            }
+            while (!readLine().isEmpty()) ; // trailer
+        } else
+            throw new IOException("Unsupported transfer encoding: " + transferEncoding);
+
+        return body.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            selector.wakeup(); // unblock a pending read
+            selector.close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+}
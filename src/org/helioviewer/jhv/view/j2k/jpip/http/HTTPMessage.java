@@ -1,9 +1,17 @@
 package org.helioviewer.jhv.view.j2k.jpip.http;
 
+import java.io.IOException;
 import java.util.HashMap;
 
+import org.helioviewer.jhv.base.Regex;
+
 public class HTTPMessage {
 
+    static void checkStatus(String line) throws IOException {
+        if (!"HTTP/1.1 200 OK".equals(line))
+            throw new IOException("Invalid HTTP response: " + line);
+    }
+
     private final HashMap<String, String> headers = new HashMap<>();
 
     public String getHeader(String key) {
@@ -14,6 +22,13 @@ public class HTTPMessage {
         headers.put(key, val);
     }
 
+    void parseField(String line) throws IOException {
+        String[] parts = Regex.HttpField.split(line);
+        if (parts.length != 2)
+            throw new IOException("Invalid HTTP header field: " + line);
+        headers.put(parts[0], parts[1]);
+    }
+
     @Override
     public String toString() {
         StringBuilder str = new StringBuilder();
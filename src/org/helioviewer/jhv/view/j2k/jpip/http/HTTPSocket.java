@@ -5,7 +5,9 @@ import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.zip.InflaterInputStream;
 import java.util.zip.GZIPInputStream;
 
@@ -13,19 +15,20 @@ import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
 import org.helioviewer.jhv.JHVGlobals;
-import org.helioviewer.jhv.base.Regex;
 import org.helioviewer.jhv.io.ProxySettings;
 
-public class HTTPSocket {
+class HTTPSocket implements HTTPTransport {
 
-    private static final int TIMEOUT_CONNECT = 30000;
-    private static final int TIMEOUT_READ = 30000;
+    static final int TIMEOUT_CONNECT = 30000;
+    static final int TIMEOUT_READ = 30000;
 
     private final Socket socket;
     private final InputStream inputStream;
-    protected final String httpHeader;
+    private final String httpHeader;
 
-    protected HTTPSocket(URI uri) throws IOException {
+    private byte[] body = new byte[64 * 1024];
+
+    HTTPSocket(URI uri) throws IOException {
         try {
             String host = uri.getHost();
             int port = uri.getPort() <= 0 ? 80 : uri.getPort();
@@ -47,20 +50,24 @@ public class HTTPSocket {
             socket.connect(new InetSocketAddress(host, port), TIMEOUT_CONNECT);
 
             inputStream = socket.getInputStream();
-
-            HTTPMessage msg = new HTTPMessage();
-            msg.setHeader("User-Agent", JHVGlobals.userAgent);
-            msg.setHeader("Connection", "keep-alive");
-            msg.setHeader("Accept-Encoding", "gzip");
-            msg.setHeader("Cache-Control", "no-cache");
-            msg.setHeader("Host", host + ':' + port);
-            httpHeader = " HTTP/1.1\r\n" + msg + "\r\n";
+            httpHeader = createHeader(host, port, true);
         } catch (Exception e) { // redirect all to IOException
             throw new IOException(e);
         }
     }
 
-    protected InputStream getInputStream(HTTPMessage msg) throws IOException {
+    static String createHeader(String host, int port, boolean gzip) {
+        HTTPMessage msg = new HTTPMessage();
+        msg.setHeader("User-Agent", JHVGlobals.userAgent);
+        msg.setHeader("Connection", "keep-alive");
+        if (gzip)
+            msg.setHeader("Accept-Encoding", "gzip");
+        msg.setHeader("Cache-Control", "no-cache");
+        msg.setHeader("Host", host + ':' + port);
+        return " HTTP/1.1\r\n" + msg + "\r\n";
+    }
+
+    private InputStream getInputStream(HTTPMessage msg) throws IOException {
         String head = msg.getHeader("Transfer-Encoding");
         String transferEncoding = head == null ? "identity" : head.toLowerCase();
         head = msg.getHeader("Content-Encoding");
@@ -88,33 +95,44 @@ public class HTTPSocket {
         };
     }
 
-    protected HTTPMessage readHeader() throws IOException {
-        String line = LineRead.readAsciiLine(inputStream);
-        if (!"HTTP/1.1 200 OK".equals(line))
-            throw new IOException("Invalid HTTP response: " + line);
+    @Override
+    public ByteBuffer readBody(HTTPMessage msg) throws IOException {
+        int len = 0;
+        try (InputStream in = getInputStream(msg)) {
+            int read;
+            while ((read = in.read(body, len, body.length - len)) != -1) {
+                len += read;
+                if (len == body.length)
+                    body = Arrays.copyOf(body, 2 * len);
+            }
+        }
+        return ByteBuffer.wrap(body, 0, len);
+    }
+
+    @Override
+    public HTTPMessage readHeader() throws IOException {
+        HTTPMessage.checkStatus(LineRead.readAsciiLine(inputStream));
 
         // Parses HTTP headers
         HTTPMessage res = new HTTPMessage();
-        while (true) {
-            line = LineRead.readAsciiLine(inputStream);
-            if (line.isEmpty())
-                return res;
-
-            String[] parts = Regex.HttpField.split(line);
-            if (parts.length != 2)
-                throw new IOException("Invalid HTTP header field: " + line);
-            res.setHeader(parts[0], parts[1]);
+        String line;
+        while (!(line = LineRead.readAsciiLine(inputStream)).isEmpty()) {
+            res.parseField(line);
         }
+        return res;
     }
 
-    protected void write(String str) throws IOException {
-        socket.getOutputStream().write(str.getBytes(StandardCharsets.UTF_8));
+    @Override
+    public void writeGet(String target) throws IOException {
+        socket.getOutputStream().write(("GET " + target + httpHeader).getBytes(StandardCharsets.UTF_8));
     }
 
-    protected void close() throws IOException {
+    @Override
+    public void close() throws IOException {
         socket.close();
     }
 
+    @Override
     public boolean isClosed() {
         return socket.isClosed();
     }
@@ -0,0 +1,34 @@
+package org.helioviewer.jhv.view.j2k.jpip.http;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import org.helioviewer.jhv.Settings;
+import org.helioviewer.jhv.io.ProxySettings;
+
+// A persistent HTTP/1.1 connection; requests may be written ahead of reading their responses
+public interface HTTPTransport {
+
+    // Plain connections without proxy go over NIO, the others over blocking sockets
+    static HTTPTransport open(URI uri) throws IOException {
+        if ("jpip".equalsIgnoreCase(uri.getScheme()) && Proxy.NO_PROXY.equals(ProxySettings.proxy) &&
+                Boolean.parseBoolean(Settings.getProperty("jpip.nio")))
+            return new HTTPChannel(uri);
+        return new HTTPSocket(uri);
+    }
+
+    // Writes a GET request for the path and query
+    void writeGet(String target) throws IOException;
+
+    HTTPMessage readHeader() throws IOException;
+
+    // The decoded body of the response, valid until the next call
+    ByteBuffer readBody(HTTPMessage msg) throws IOException;
+
+    void close() throws IOException;
+
+    boolean isClosed();
+
+}
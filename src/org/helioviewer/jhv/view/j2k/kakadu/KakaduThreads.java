@@ -0,0 +1,149 @@
+package org.helioviewer.jhv.view.j2k.kakadu;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kdu_jni.KduException;
+import kdu_jni.Kdu_thread_env;
+import kdu_jni.Kdu_thread_queue;
+
+// The Kakadu worker threads of the process, about one per core: they are split into a few groups
+// and a decode borrows a group for its duration instead of each decoder thread creating its own set.
+// The borrowing thread becomes the owner of the group and the decode gets its own work queue within it.
+// One group is kept for the decodes of the displayed frames, which also take precedence over the
+// prefetch decodes when waiting for a group.
+public class KakaduThreads {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int GROUPS = Math.max(2, Math.min(4, CORES / 2));
+    private static final int GROUP_THREADS = Math.max(1, CORES / GROUPS); // including the owner
+    private static final int RESERVED = 1; // for display
+
+    private static final ArrayDeque<Kdu_thread_env> idle = new ArrayDeque<>(GROUPS);
+    private static int created;
+    private static int displayWaiting;
+
+    private static final AtomicLong heldNanos = new AtomicLong(); // group time, all decodes
+    private static final AtomicLong waitNanos = new AtomicLong();
+
+    public static class Lease implements AutoCloseable {
+
+        public final Kdu_thread_env env;
+        public final Kdu_thread_queue queue = new Kdu_thread_queue();
+        private final long start = System.nanoTime();
+        private long groupNanos;
+
+        private Lease(Kdu_thread_env _env) throws KduException {
+            env = _env;
+            try {
+                env.Change_group_owner_thread();
+                env.Attach_queue(queue, null, "decode");
+            } catch (KduException e) {
+                queue.Native_destroy();
+                throw e;
+            }
+        }
+
+        // time the group was held times its threads, an upper bound of the CPU time used by the decode; valid after close
+        public long getGroupNanos() {
+            return groupNanos;
+        }
+
+        @Override
+        public void close() throws KduException {
+            try {
+                env.Join(queue);
+            } finally {
+                queue.Native_destroy();
+                groupNanos = (System.nanoTime() - start) * GROUP_THREADS;
+                heldNanos.addAndGet(groupNanos);
+                release(env);
+            }
+        }
+
+    }
+
+    public static Lease acquire(boolean display) throws KduException, InterruptedException {
+        Kdu_thread_env env = take(display);
+        if (env == null) {
+            try {
+                env = createGroup();
+            } catch (KduException e) {
+                synchronized (idle) {
+                    created--;
+                    idle.notifyAll();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            return new Lease(env);
+        } catch (KduException e) {
+            release(env);
+            throw e;
+        }
+    }
+
+    // an idle group, or null if the caller should create one
+    private static Kdu_thread_env take(boolean display) throws InterruptedException {
+        long t0 = System.nanoTime();
+        synchronized (idle) {
+            if (display)
+                displayWaiting++;
+            try {
+                while (true) {
+                    int free = idle.size() + GROUPS - created;
+                    if (display ? free > 0 : free > RESERVED && displayWaiting == 0) {
+                        if (!idle.isEmpty())
+                            return idle.poll();
+                        created++;
+                        return null;
+                    }
+                    idle.wait();
+                }
+            } finally {
+                if (display)
+                    displayWaiting--;
+                waitNanos.addAndGet(System.nanoTime() - t0);
+            }
+        }
+    }
+
+    private static void release(Kdu_thread_env env) {
+        synchronized (idle) {
+            idle.add(env);
+            idle.notifyAll();
+        }
+    }
+
+    private static Kdu_thread_env createGroup() throws KduException {
+        Kdu_thread_env env = new Kdu_thread_env();
+        try {
+            env.Create();
+            for (int i = 1; i < GROUP_THREADS; i++)
+                env.Add_thread();
+        } catch (KduException e) {
+            try {
+                env.Destroy();
+            } catch (KduException ignore) {
+            }
+            env.Native_destroy();
+            throw e;
+        }
+        return env;
+    }
+
+    public static long getHeldNanos() {
+        return heldNanos.get();
+    }
+
+    public static String getStats() {
+        int n;
+        synchronized (idle) {
+            n = created;
+        }
+        return String.format("Kakadu: %d of %d groups of %d threads, waited %.1fs", n, GROUPS, GROUP_THREADS, waitNanos.get() / 1e9);
+    }
+
+}
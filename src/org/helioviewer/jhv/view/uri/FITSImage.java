@@ -1,17 +1,33 @@
 package org.helioviewer.jhv.view.uri;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
 
 import nom.tam.fits.BasicHDU;
 import nom.tam.fits.Fits;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
+import nom.tam.fits.ImageData;
 import nom.tam.fits.ImageHDU;
 import nom.tam.fits.header.Standard;
 import nom.tam.image.compression.hdu.CompressedImageHDU;
@@ -19,11 +35,14 @@ import nom.tam.util.Cursor;
 
 import org.helioviewer.jhv.imagedata.ImageBuffer;
 import org.helioviewer.jhv.io.FileUtils;
+import org.helioviewer.jhv.io.InflateCache;
 import org.helioviewer.jhv.io.NetClient;
 import org.helioviewer.jhv.math.MathUtils;
+import org.helioviewer.jhv.time.TimeUtils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 //import com.google.common.base.Stopwatch;
-import com.google.common.primitives.Floats;
 import com.google.common.xml.XmlEscapers;
 
 // essentially static; local or network cache
@@ -31,23 +50,56 @@ class FITSImage implements URIImageReader {
 
     @Override
     public URIImageReader.Image readImage(URI uri) throws Exception {
+        try (InflateCache.Pinned local = localFile(uri)) {
+            if (local != null) {
+                File file = local.file();
+                FrameRef ref = getFrames(file).get(0);
+                return new URIImageReader.Image(getHeaderAsXML(ref), readFrame(file, ref));
+            }
+        }
+
         try (NetClient nc = NetClient.of(uri);
              InputStream is = FileUtils.decompressStream(nc.getStream());
              Fits f = new Fits(is)) {
             ImageHDU hdu = findHDU(f);
-            return new URIImageReader.Image(getHeaderAsXML(hdu), readHDU(hdu));
+            return new URIImageReader.Image(getHeaderAsXML(hdu.getHeader(), false, null), readHDU(hdu, 0));
         }
     }
 
     @Override
-    public ImageBuffer readImageBuffer(URI uri) throws Exception {
+    public ImageBuffer readImageBuffer(URI uri, int frame) throws Exception {
+        try (InflateCache.Pinned local = localFile(uri)) {
+            if (local != null)
+                return readFrame(local.file(), getFrames(local.file()).get(frame));
+        }
+
         try (NetClient nc = NetClient.of(uri);
              InputStream is = FileUtils.decompressStream(nc.getStream());
              Fits f = new Fits(is)) {
-            return readHDU(findHDU(f));
+            return readHDU(findHDU(f), 0);
+        }
+    }
+
+    @Override
+    public String readXML(URI uri, int frame) throws Exception {
+        try (InflateCache.Pinned local = localFile(uri)) {
+            return local == null ? readImage(uri).xml() : getHeaderAsXML(getFrames(local.file()).get(frame));
+        }
+    }
+
+    @Override
+    public List<String> readFramesXML(URI uri) throws Exception {
+        try (InflateCache.Pinned local = localFile(uri)) {
+            return local == null ? List.of(readImage(uri).xml()) : getFrames(local.file()).stream().map(FITSImage::getHeaderAsXML).toList();
         }
     }
 
+    // remote files are already in the local cache, see NetFileCache; gzipped files are inflated there
+    @Nullable
+    private static InflateCache.Pinned localFile(URI uri) throws IOException {
+        return "file".equals(uri.getScheme()) ? InflateCache.get(new File(uri.getPath())) : null;
+    }
+
     private static ImageHDU findHDU(Fits fits) throws Exception {
         BasicHDU<?>[] hdus = fits.read();
         // this is cumbersome
@@ -64,56 +116,369 @@ class FITSImage implements URIImageReader {
         throw new Exception("No image found");
     }
 
-    private enum PixType {BYTE, SHORT, INT, LONG, FLOAT, DOUBLE}
+    // An image extension, or a plane of a cube; offset is the file position of the data unit when
+    // it can be mapped, -1 otherwise
+    private record FrameRef(int hdu, int plane, int planes, int width, int height, Header header,
+                            boolean compressed, long offset) {
+    }
+
+    private static final Cache<String, List<FrameRef>> frameIndex = Caffeine.newBuilder().maximumSize(64).build();
+
+    private static List<FrameRef> getFrames(File file) throws Exception {
+        String key = file.getPath() + ':' + file.lastModified();
+        List<FrameRef> frames = frameIndex.getIfPresent(key);
+        if (frames == null) {
+            frames = indexFrames(file);
+            frameIndex.put(key, frames);
+        }
+        return frames;
+    }
+
+    // walks the headers, the data units are skipped with random access; compressed images first, as findHDU
+    private static List<FrameRef> indexFrames(File file) throws Exception {
+        ArrayList<FrameRef> compressed = new ArrayList<>();
+        ArrayList<FrameRef> images = new ArrayList<>();
+        try (Fits f = new Fits(file)) {
+            BasicHDU<?> hdu;
+            for (int i = 0; (hdu = f.readHDU()) != null; i++) {
+                Header header = hdu.getHeader();
+                if (hdu instanceof CompressedImageHDU) {
+                    int naxis = header.getIntValue("ZNAXIS");
+                    if (naxis == 2 || naxis == 3)
+                        addPlanes(compressed, i, naxis == 3 ? header.getIntValue("ZNAXIS3") : 1,
+                                header.getIntValue("ZNAXIS1"), header.getIntValue("ZNAXIS2"), header, true, -1);
+                } else if (hdu instanceof ImageHDU ihdu) {
+                    int[] axes = ihdu.getAxes();
+                    if (axes == null || axes.length < 2 || axes.length > 3) // might be an extension
+                        continue;
+                    ImageData data = ihdu.getData();
+                    int n = axes.length;
+                    addPlanes(images, i, n == 3 ? axes[0] : 1, axes[n - 1], axes[n - 2], header, false,
+                            data.isDeferred() ? data.getFileOffset() : -1);
+                }
+            }
+        }
+        compressed.addAll(images);
+        if (compressed.isEmpty())
+            throw new Exception("No image found");
+        return compressed;
+    }
+
+    private static void addPlanes(List<FrameRef> list, int hdu, int planes, int width, int height, Header header, boolean compressed, long offset) {
+        for (int p = 0; p < planes; p++)
+            list.add(new FrameRef(hdu, p, planes, width, height, header, compressed, offset));
+    }
+
+    private static ImageBuffer readFrame(File file, FrameRef ref) throws Exception {
+        if (ref.offset >= 0) {
+            ImageBuffer ib = readMapped(file, ref);
+            if (ib != null)
+                return ib;
+        }
+        if (ref.compressed && ref.planes > 1)
+            return readHDU(getCube(file, ref), ref.plane);
+        try (Fits f = new Fits(file)) {
+            BasicHDU<?> hdu = f.getHDU(ref.hdu);
+            ImageHDU ihdu = hdu instanceof CompressedImageHDU chdu ? chdu.asImageHDU() : (ImageHDU) hdu;
+            return readHDU(ihdu, ref.plane);
+        }
+    }
+
+    // compressed cubes are decompressed whole, once for all their planes, and kept while the frames are read
+    private static final Cache<String, ImageHDU> cubes = Caffeine.newBuilder()
+            .maximumWeight(Runtime.getRuntime().maxMemory() / (8 * 1024)) // kB
+            .weigher((String key, ImageHDU hdu) -> (int) Math.min(Integer.MAX_VALUE, hdu.getData().getSize() / 1024))
+            .expireAfterAccess(30, TimeUnit.SECONDS)
+            .build();
+
+    private static ImageHDU getCube(File file, FrameRef ref) throws Exception {
+        String key = file.getPath() + ':' + file.lastModified() + ':' + ref.hdu;
+        try {
+            return cubes.get(key, k -> {
+                try (Fits f = new Fits(file)) {
+                    ImageHDU cube = ((CompressedImageHDU) f.getHDU(ref.hdu)).asImageHDU();
+                    cube.getData().getData(); // decompressed while the file is open
+                    return cube;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (CompletionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private enum PixType {
+        BYTE(1), SHORT(2), INT(4), LONG(8), FLOAT(4), DOUBLE(8);
+
+        final int bytes;
+
+        PixType(int _bytes) {
+            bytes = _bytes;
+        }
+    }
 
     private static final double GAMMA = 1 / 2.2;
     private static final long BLANK = 0; // in case it doesn't exist, very unlikely value
 
-    private static float getValue(PixType pixType, Object lineData, int i, long blank, double bzero, double bscale) {
-        switch (pixType) {
-            case SHORT -> {
-                short v = ((short[]) lineData)[i];
-                return (blank != BLANK && v == blank) ? ImageBuffer.BAD_PIXEL : (float) (bzero + v * bscale);
+    // BZERO/BSCALE/BLANK applied to rows of raw values, one kernel per type so that the loops
+    // are simple enough to be vectorized by the JIT
+    private record Scaling(long blank, double bzero, double bscale) {
+
+        float value(short v) { // as convert(short[]...) does
+            return blank != BLANK && v == blank ? ImageBuffer.BAD_PIXEL : (float) (bzero + v * bscale);
+        }
+
+        void convert(short[] src, float[] dst, int n) {
+            if (blank == BLANK) {
+                for (int i = 0; i < n; i++)
+                    dst[i] = (float) (bzero + src[i] * bscale);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    short v = src[i];
+                    dst[i] = v == blank ? ImageBuffer.BAD_PIXEL : (float) (bzero + v * bscale);
+                }
             }
-            case INT -> {
-                int v = ((int[]) lineData)[i];
-                return (blank != BLANK && v == blank) ? ImageBuffer.BAD_PIXEL : (float) (bzero + v * bscale);
+        }
+
+        void convert(int[] src, float[] dst, int n) {
+            if (blank == BLANK) {
+                for (int i = 0; i < n; i++)
+                    dst[i] = (float) (bzero + src[i] * bscale);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    int v = src[i];
+                    dst[i] = v == blank ? ImageBuffer.BAD_PIXEL : (float) (bzero + v * bscale);
+                }
             }
-            case LONG -> {
-                long v = ((long[]) lineData)[i];
-                return (blank != BLANK && v == blank) ? ImageBuffer.BAD_PIXEL : (float) (bzero + v * bscale);
+        }
+
+        void convert(long[] src, float[] dst, int n) {
+            for (int i = 0; i < n; i++) {
+                long v = src[i];
+                dst[i] = (blank != BLANK && v == blank) ? ImageBuffer.BAD_PIXEL : (float) (bzero + v * bscale);
             }
-            case FLOAT -> {
-                float v = ((float[]) lineData)[i];
-                return Float.isFinite(v) ? (float) (bzero + v * bscale) : ImageBuffer.BAD_PIXEL;
+        }
+
+        void convert(float[] src, float[] dst, int n) {
+            for (int i = 0; i < n; i++) {
+                float v = src[i];
+                dst[i] = Float.isFinite(v) ? (float) (bzero + v * bscale) : ImageBuffer.BAD_PIXEL;
             }
-            case DOUBLE -> {
-                double v = ((double[]) lineData)[i];
-                return Double.isFinite(v) ? (float) (bzero + v * bscale) : ImageBuffer.BAD_PIXEL;
+        }
+
+        void convert(double[] src, float[] dst, int n) {
+            for (int i = 0; i < n; i++) {
+                double v = src[i];
+                dst[i] = Double.isFinite(v) ? (float) (bzero + v * bscale) : ImageBuffer.BAD_PIXEL;
             }
-            default -> {
-                return ImageBuffer.BAD_PIXEL;
+        }
+
+    }
+
+    // physical values of a row of pixels, BAD_PIXEL for the blank ones
+    private interface RowReader {
+        void read(int j, float[] row);
+    }
+
+    // raw values of a row of 16-bit pixels
+    private interface ShortRowReader {
+        short[] read(int j);
+    }
+
+    private interface Pixels {
+        PixType pixType();
+
+        Scaling scaling();
+
+        // for use by a single thread
+        RowReader reader();
+
+        // for use by a single thread, null unless 16-bit pixels
+        @Nullable
+        ShortRowReader shortReader();
+    }
+
+    private record ArrayPixels(PixType pixType, Object[] pixData, int width, Scaling scaling) implements Pixels {
+        @Override
+        public RowReader reader() {
+            return switch (pixType) {
+                case SHORT -> (j, row) -> scaling.convert((short[]) pixData[j], row, width);
+                case INT -> (j, row) -> scaling.convert((int[]) pixData[j], row, width);
+                case LONG -> (j, row) -> scaling.convert((long[]) pixData[j], row, width);
+                case FLOAT -> (j, row) -> scaling.convert((float[]) pixData[j], row, width);
+                case DOUBLE -> (j, row) -> scaling.convert((double[]) pixData[j], row, width);
+                default -> (j, row) -> Arrays.fill(row, 0, width, ImageBuffer.BAD_PIXEL);
+            };
+        }
+
+        @Override
+        public ShortRowReader shortReader() {
+            return pixType == PixType.SHORT ? j -> (short[]) pixData[j] : null;
+        }
+    }
+
+    // big-endian data unit of a memory-mapped file, rows are bulk copied into a scratch array
+    private record MappedPixels(PixType pixType, ByteBuffer data, int width, Scaling scaling) implements Pixels {
+        @Override
+        public RowReader reader() {
+            switch (pixType) {
+                case SHORT -> {
+                    ShortBuffer buf = data.asShortBuffer();
+                    short[] src = new short[width];
+                    return (j, row) -> {
+                        buf.get(j * width, src);
+                        scaling.convert(src, row, width);
+                    };
+                }
+                case INT -> {
+                    IntBuffer buf = data.asIntBuffer();
+                    int[] src = new int[width];
+                    return (j, row) -> {
+                        buf.get(j * width, src);
+                        scaling.convert(src, row, width);
+                    };
+                }
+                case LONG -> {
+                    LongBuffer buf = data.asLongBuffer();
+                    long[] src = new long[width];
+                    return (j, row) -> {
+                        buf.get(j * width, src);
+                        scaling.convert(src, row, width);
+                    };
+                }
+                case FLOAT -> {
+                    FloatBuffer buf = data.asFloatBuffer();
+                    float[] src = new float[width];
+                    return (j, row) -> {
+                        buf.get(j * width, src);
+                        scaling.convert(src, row, width);
+                    };
+                }
+                case DOUBLE -> {
+                    DoubleBuffer buf = data.asDoubleBuffer();
+                    double[] src = new double[width];
+                    return (j, row) -> {
+                        buf.get(j * width, src);
+                        scaling.convert(src, row, width);
+                    };
+                }
+                default -> {
+                    return (j, row) -> Arrays.fill(row, 0, width, ImageBuffer.BAD_PIXEL);
+                }
             }
         }
+
+        @Override
+        public ShortRowReader shortReader() {
+            if (pixType != PixType.SHORT)
+                return null;
+            ShortBuffer buf = data.asShortBuffer();
+            short[] src = new short[width];
+            return j -> {
+                buf.get(j * width, src);
+                return src;
+            };
+        }
     }
 
     // private static final int SAMPLE = 8;
     private static final int SAMPLE = 4;
 
-    private static float[] sampleImage(PixType pixType, int width, int height, Object[] pixData, long blank, double bzero, double bscale) {
+    // regular grid of samples, BAD_PIXEL included
+    private static float[] sampleImage(int width, int height, Pixels pixels) {
         int stepW = Math.max(SAMPLE * width / 1024, 1);
         int stepH = Math.max(SAMPLE * height / 1024, 1);
-        ArrayList<Float> sampleData = new ArrayList<>((width / stepW) * (height / stepH));
-
-        for (int j = 0; j < height; j += stepH) {
-            Object lineData = pixData[j];
-            for (int i = 0; i < width; i += stepW) {
-                float v = getValue(pixType, lineData, i, blank, bzero, bscale);
-                if (v != ImageBuffer.BAD_PIXEL)
-                    sampleData.add(v);
+        int sampleW = (width + stepW - 1) / stepW;
+        int sampleH = (height + stepH - 1) / stepH;
+        float[] sampleData = new float[sampleW * sampleH];
+
+        int stripe = Math.max(1, sampleH / PARALLELISM);
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(sampleH / stripe + 1);
+        for (int k = 0; k < sampleH; k += stripe) {
+            int from = k, to = Math.min(sampleH, k + stripe);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                RowReader reader = pixels.reader();
+                float[] row = new float[width];
+                for (int l = from; l < to; l++) {
+                    reader.read(l * stepH, row);
+                    for (int c = 0, i = 0; c < sampleW; c++, i += stepW)
+                        sampleData[l * sampleW + c] = row[i];
+                }
+            }).fork());
+        }
+        tasks.forEach(ForkJoinTask::join);
+        return sampleData;
+    }
+
+    private static final int PARALLELISM = ForkJoinPool.getCommonPoolParallelism() + 1;
+    private static final int BINS = 65536;
+
+    // unsigned int keys ordered as the float values
+    private static int sortableKey(float v) {
+        int bits = Float.floatToRawIntBits(v);
+        return bits ^ ((bits >> 31) | 0x80000000);
+    }
+
+    private static float keyValue(int key) {
+        return Float.intBitsToFloat(key < 0 ? key ^ 0x80000000 : ~key);
+    }
+
+    private static int[] histogram(float[] data, int from, int to) {
+        int[] hist = new int[BINS];
+        for (int i = from; i < to; i++) {
+            float v = data[i];
+            if (v != ImageBuffer.BAD_PIXEL)
+                hist[sortableKey(v) >>> 16]++;
+        }
+        return hist;
+    }
+
+    // exact values at the given quantiles of the valid samples, the same as sorting them;
+    // radix select: a parallel histogram of the upper 16 bits of the keys, then one of the lower
+    // 16 bits restricted to the bin holding each rank; package-private for the benchmark
+    @Nullable
+    static float[] quantiles(float[] data, double... mults) {
+        int chunk = Math.max(BINS, (data.length + PARALLELISM - 1) / PARALLELISM);
+        ArrayList<ForkJoinTask<int[]>> tasks = new ArrayList<>(data.length / chunk + 1);
+        for (int k = 0; k < data.length; k += chunk) {
+            int from = k, to = Math.min(data.length, k + chunk);
+            tasks.add(ForkJoinTask.adapt(() -> histogram(data, from, to)).fork());
+        }
+        int[] hist = new int[BINS];
+        for (ForkJoinTask<int[]> task : tasks) {
+            int[] h = task.join();
+            for (int b = 0; b < BINS; b++)
+                hist[b] += h[b];
+        }
+
+        long count = 0;
+        for (int h : hist)
+            count += h;
+        if (count == 0)
+            return null;
+
+        float[] ret = new float[mults.length];
+        for (int m = 0; m < mults.length; m++) {
+            long rank = (long) (mults[m] * count);
+            int bin = 0;
+            while (rank >= hist[bin])
+                rank -= hist[bin++];
+
+            int[] low = new int[BINS];
+            for (float v : data) {
+                if (v == ImageBuffer.BAD_PIXEL)
+                    continue;
+                int key = sortableKey(v);
+                if (key >>> 16 == bin)
+                    low[key & 0xFFFF]++;
             }
+            int l = 0;
+            while (rank >= low[l])
+                rank -= low[l++];
+            ret[m] = keyValue(bin << 16 | l);
         }
-        return Floats.toArray(sampleData);
+        return ret;
     }
 
     /*
@@ -139,17 +504,19 @@ class FITSImage implements URIImageReader {
 
     // private static final double MIN_MULT = 0.0005;
     // private static final double MAX_MULT = 0.9995;
-    private static final double MIN_MULT = 0.00001;
-    private static final double MAX_MULT = 0.99999;
+    static final double MIN_MULT = 0.00001;
+    static final double MAX_MULT = 0.99999;
 
-    private static ImageBuffer readHDU(ImageHDU hdu) throws Exception {
+    private static ImageBuffer readHDU(ImageHDU hdu, int plane) throws Exception {
         int[] axes = hdu.getAxes();
-        if (axes == null || axes.length != 2)
-            throw new Exception("Only 2D FITS files supported");
-        int height = axes[0];
-        int width = axes[1];
-
-        Object[] pixData = (Object[]) hdu.getData().getData();
+        if (axes == null || axes.length < 2 || axes.length > 3)
+            throw new Exception("Only 2D FITS images or 3D cubes supported");
+        int n = axes.length;
+        int height = axes[n - 2];
+        int width = axes[n - 1];
+
+        Object kernel = hdu.getData().getData();
+        Object[] pixData = (Object[]) (n == 3 ? ((Object[]) kernel)[plane] : kernel);
         PixType pixType = getPixType(pixData);
 
         if (pixType == PixType.BYTE) {
@@ -162,19 +529,49 @@ class FITSImage implements URIImageReader {
         }
 
         Header header = hdu.getHeader();
-        long blank = header.getLongValue(Standard.BLANK, BLANK);
-        double bzero = header.getDoubleValue(Standard.BZERO, 0);
-        double bscale = header.getDoubleValue(Standard.BSCALE, 1);
+        return convertImage(width, height, header, new ArrayPixels(pixType, pixData, width, getScaling(header)));
+    }
+
+    // uncompressed data units are converted straight from the mapped file, without the row arrays;
+    // null if the plane is too large to be mapped
+    @Nullable
+    private static ImageBuffer readMapped(File file, FrameRef ref) throws Exception {
+        int width = ref.width;
+        int height = ref.height;
+        Header header = ref.header;
+        PixType pixType = getPixType(header.getIntValue(Standard.BITPIX));
+        long size = (long) width * height * pixType.bytes;
+        if (size > Integer.MAX_VALUE)
+            return null;
+
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, ref.offset + ref.plane * size, size); // valid after close
+        }
 
+        if (pixType == PixType.BYTE) {
+            byte[] outData = new byte[width * height];
+            for (int j = 0; j < height; j++) {
+                mapped.get(width * j, outData, width * (height - 1 - j), width);
+            }
+            return new ImageBuffer(width, height, ImageBuffer.Format.Gray8, ByteBuffer.wrap(outData));
+        }
+
+        return convertImage(width, height, header, new MappedPixels(pixType, mapped, width, getScaling(header)));
+    }
+
+    private static Scaling getScaling(Header header) {
+        return new Scaling(header.getLongValue(Standard.BLANK, BLANK), header.getDoubleValue(Standard.BZERO, 0), header.getDoubleValue(Standard.BSCALE, 1));
+    }
+
+    private static final int STRIPE = 64; // rows per conversion task
+
+    private static ImageBuffer convertImage(int width, int height, Header header, Pixels pixels) {
         float[] minMax = new float[]{header.getFloatValue("HV_DMIN", Float.MAX_VALUE), header.getFloatValue("HV_DMAX", Float.MAX_VALUE)};
         if (minMax[0] == Float.MAX_VALUE || minMax[1] == Float.MAX_VALUE) {
-            float[] sampleData = sampleImage(pixType, width, height, pixData, blank, bzero, bscale);
-            Arrays.sort(sampleData);
-
-            // System.out.println(">>> " + sampleData.length + " " + (int) (MIN_MULT * sampleData.length) + " " + (int) (MAX_MULT * sampleData.length));
-            minMax = new float[]{
-                    sampleData[(int) (MIN_MULT * sampleData.length)],
-                    sampleData[(int) (MAX_MULT * sampleData.length)]};
+            minMax = quantiles(sampleImage(width, height, pixels), MIN_MULT, MAX_MULT);
+            if (minMax == null) // all blank
+                minMax = new float[]{0, 1};
 
             // minMax = getMinMax(pixType, width, height, pixData, blank, bzero, bscale);
             if (minMax[0] == minMax[1]) {
@@ -185,21 +582,53 @@ class FITSImage implements URIImageReader {
         // System.out.println(">>> " + minMax[0] + ' ' + minMax[1]);
 
         short[] outData = new short[width * height];
+        double scale = 65535. / MathUtils.pow(range, GAMMA);
+        float min = minMax[0], max = minMax[1];
+        // inverse of the quantization below, the same pow in both directions
         float[] lut = new float[65536];
-        double scale = 65535. / Math.pow(range, GAMMA);
+        lut[0] = min;
+        for (int p = 1; p < lut.length; p++)
+            lut[p] = (float) MathUtils.clip(min + MathUtils.powInverse(p / scale, GAMMA), min, max);
+
+        // 16-bit pixels go through a table of all their raw values, the pow is not evaluated per pixel
+        short[] table = null;
+        if (pixels.pixType() == PixType.SHORT) {
+            Scaling scaling = pixels.scaling();
+            table = new short[65536];
+            for (int k = 0; k < table.length; k++)
+                table[k] = quantize(scaling.value((short) k), min, max, scale);
+        }
 
         //Stopwatch sw = Stopwatch.createStarted();
-        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(height);
-        for (int j = 0; j < height; j++) {
-            Object lineData = pixData[j];
-            int outLine = width * (height - 1 - j);
-            tasks.add(ForkJoinTask.adapt(new convert(pixType, width, lineData, blank, bzero, bscale, scale, minMax, lut, outData, outLine)).fork());
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(height / STRIPE + 1);
+        for (int j = 0; j < height; j += STRIPE) {
+            tasks.add(ForkJoinTask.adapt(new convert(pixels, width, height, j, Math.min(height, j + STRIPE), scale, min, max, table, outData)).fork());
         }
         tasks.forEach(ForkJoinTask::join);
         //System.out.println(">>> " + sw.elapsed().toNanos() / 1e9);
         return new ImageBuffer(width, height, ImageBuffer.Format.Gray16, ShortBuffer.wrap(outData), lut);
     }
 
+    // as the per-pixel loop of convert, which keeps its own copy for speed
+    private static short quantize(float v, float min, float max, double scale) {
+        if (v == ImageBuffer.BAD_PIXEL)
+            return 0;
+        v = MathUtils.clip(v, min, max); // sampling may have missed extremes
+        return (short) MathUtils.clip(scale * MathUtils.pow(v - min, GAMMA) + .5, 0, 65535);
+    }
+
+    private static PixType getPixType(int bitpix) throws Exception {
+        return switch (bitpix) {
+            case 8 -> PixType.BYTE;
+            case 16 -> PixType.SHORT;
+            case 32 -> PixType.INT;
+            case 64 -> PixType.LONG;
+            case -32 -> PixType.FLOAT;
+            case -64 -> PixType.DOUBLE;
+            default -> throw new Exception("Unknown BITPIX: " + bitpix);
+        };
+    }
+
     private static PixType getPixType(Object[] pixData) throws Exception {
         if (pixData instanceof byte[][])
             return PixType.BYTE;
@@ -217,20 +646,43 @@ class FITSImage implements URIImageReader {
             throw new Exception("Unknown pixel type: " + pixData.getClass().getSimpleName());
     }
 
-    private record convert(PixType pixType, int width, Object lineData, long blank, double bzero, double bscale,
-                           double scale, float[] minMax, float[] lut, short[] outData,
-                           int outLine) implements Runnable {
+    private record convert(Pixels pixels, int width, int height, int fromRow, int toRow,
+                           double scale, float min, float max, @Nullable short[] table, short[] outData) implements Runnable {
         @Override
         public void run() {
-            for (int i = 0; i < width; i++) {
-                float v = getValue(pixType, lineData, i, blank, bzero, bscale);
-                if (v == ImageBuffer.BAD_PIXEL) {
-                    outData[outLine + i] = 0;
-                } else {
-                    v = MathUtils.clip(v, minMax[0], minMax[1]); // sampling may have missed extremes
-                    int p = (int) MathUtils.clip(scale * MathUtils.pow(v - minMax[0], GAMMA) + .5, 0, 65535);
-                    lut[p] = v;
-                    outData[outLine + i] = (short) p;
+            if (table != null)
+                convertShort();
+            else
+                convertFloat();
+        }
+
+        private void convertShort() {
+            ShortRowReader reader = pixels.shortReader();
+            short[] lookup = table;
+            for (int j = fromRow; j < toRow; j++) {
+                short[] row = reader.read(j);
+                int outLine = width * (height - 1 - j);
+                for (int i = 0; i < width; i++)
+                    outData[outLine + i] = lookup[row[i] & 0xFFFF];
+            }
+        }
+
+        private void convertFloat() {
+            RowReader reader = pixels.reader();
+            float[] row = new float[width];
+            float lo = min, hi = max; // in locals, the loop is compiled markedly faster
+            double s = scale;
+            for (int j = fromRow; j < toRow; j++) {
+                reader.read(j, row);
+                int outLine = width * (height - 1 - j);
+                for (int i = 0; i < width; i++) {
+                    float v = row[i];
+                    if (v == ImageBuffer.BAD_PIXEL) {
+                        outData[outLine + i] = 0;
+                    } else {
+                        v = MathUtils.clip(v, lo, hi); // sampling may have missed extremes
+                        outData[outLine + i] = (short) MathUtils.clip(s * MathUtils.pow(v - lo, GAMMA) + .5, 0, 65535);
+                    }
                 }
             }
         }
@@ -238,16 +690,67 @@ class FITSImage implements URIImageReader {
 
     private static final String nl = System.getProperty("line.separator");
 
-    private static String getHeaderAsXML(ImageHDU hdu) {
+    private static String getHeaderAsXML(FrameRef ref) {
+        return getHeaderAsXML(ref.header, ref.compressed, ref.planes > 1 ? getPlaneTime(ref.header, ref.plane) : null);
+    }
+
+    // the planes of a time cube are placed along the time axis, the others 1ms apart to stay distinct frames
+    @Nullable
+    private static String getPlaneTime(Header header, int plane) {
+        String date = header.getStringValue("DATE-OBS", header.getStringValue("DATE_OBS"));
+        if (date == null)
+            return null;
+        String ctype = header.getStringValue("CTYPE3", "");
+        double offset = ctype.startsWith("TIME") || ctype.startsWith("UTC") ?
+                (header.getDoubleValue("CRVAL3", 0) + (plane + 1 - header.getDoubleValue("CRPIX3", 1)) * header.getDoubleValue("CDELT3", 1)) *
+                        timeUnit(header.getStringValue("CUNIT3", "s")) :
+                plane / 1000.;
+        return TimeUtils.format(TimeUtils.parse(date) + Math.round(offset * 1000));
+    }
+
+    // seconds per unit of the time axis
+    private static double timeUnit(String unit) {
+        return switch (unit.trim()) {
+            case "ms" -> 1e-3;
+            case "min" -> 60;
+            case "h" -> 3600;
+            case "d" -> 86400;
+            default -> 1;
+        };
+    }
+
+    // table structure of the tiled compression
+    private static final Pattern tableKeys = Pattern.compile("XTENSION|BITPIX|NAXIS\\d*|PCOUNT|GCOUNT|TFIELDS|T(TYPE|FORM|UNIT|DIM)\\d+|" +
+            "ZIMAGE|ZTILE\\d+|ZCMPTYPE|ZNAME\\d+|ZVAL\\d+|ZQUANTIZ|ZDITHER0|ZSIMPLE|ZTENSION|ZEXTEND|ZBLOCKED|ZPCOUNT|ZGCOUNT|ZHECKSUM|ZDATASUM");
+    private static final Pattern imageKeys = Pattern.compile("Z(BITPIX|NAXIS\\d*)");
+
+    private static String getHeaderAsXML(Header header, boolean compressed, @Nullable String planeTime) {
         StringBuilder builder = new StringBuilder("<meta>" + nl + "<fits>" + nl);
+        boolean dated = false;
 
-        for (Cursor<String, HeaderCard> iter = hdu.getHeader().iterator(); iter.hasNext(); ) {
+        for (Cursor<String, HeaderCard> iter = header.iterator(); iter.hasNext(); ) {
             HeaderCard headerCard = iter.next();
             String key = headerCard.getKey().trim();
             if ("END".equals(key))
                 continue;
             if (key.isEmpty())
                 key = "COMMENT";
+            if (compressed) { // as the uncompressed image
+                if (imageKeys.matcher(key).matches())
+                    key = key.substring(1);
+                else if (tableKeys.matcher(key).matches())
+                    continue;
+            }
+            if (planeTime != null) {
+                if ("DATE-OBS".equals(key) || "DATE_OBS".equals(key)) { // in place of the first one present
+                    if (!dated)
+                        builder.append("<DATE-OBS>").append(planeTime).append("</DATE-OBS>").append(nl);
+                    dated = true;
+                    continue;
+                }
+                if ("DATE-AVG".equals(key) || "DATE_AVG".equals(key))
+                    continue;
+            }
 
             String value = headerCard.getValue();
             String val = value == null ? "" : XmlEscapers.xmlContentEscaper().escape(value);
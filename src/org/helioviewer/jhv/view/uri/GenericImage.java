@@ -4,15 +4,21 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferUShort;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.Buffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.annotation.Nullable;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.ImageReader;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.metadata.IIOMetadataNode;
@@ -21,6 +27,7 @@ import javax.imageio.stream.ImageInputStream;
 import org.helioviewer.jhv.Log;
 //import org.helioviewer.jhv.base.XMLUtils;
 import org.helioviewer.jhv.imagedata.ImageBuffer;
+import org.helioviewer.jhv.imagedata.ImagePyramid;
 import org.helioviewer.jhv.io.NetClient;
 
 // essentially static; local or network cache
@@ -33,18 +40,7 @@ class GenericImage implements URIImageReader {
             if (reader == null)
                 throw new Exception("No image reader found");
 
-            String xml = null;
-            // read metadata of first image
-            try {
-                IIOMetadata metadata = reader.getImageMetadata(0); // random files may have malformed metadata
-                IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree("javax_imageio_1.0");
-                Object text = root.getElementsByTagName("TextEntry").item(0);
-                if (text instanceof IIOMetadataNode) {
-                    xml = ((IIOMetadataNode) text).getAttribute("value");
-                }
-            } catch (Exception e) {
-                Log.error(uri.toString(), e);
-            }
+            String xml = readXML(reader, uri);
             /*
             String[] names = metadata.getMetadataFormatNames();
             int length = names.length;
@@ -53,7 +49,7 @@ class GenericImage implements URIImageReader {
                 XMLUtils.displayNode(metadata.getAsTree(names[i]), 0);
             }
             */
-            ImageBuffer imageBuffer = buffered2ImageBuffer(reader.read(0));
+            ImageBuffer imageBuffer = read(reader, 0);
             reader.dispose();
 
             return new URIImageReader.Image(xml, imageBuffer);
@@ -61,18 +57,96 @@ class GenericImage implements URIImageReader {
     }
 
     @Override
-    public ImageBuffer readImageBuffer(URI uri) throws Exception {
+    public List<String> readFramesXML(URI uri) throws Exception {
+        return Collections.singletonList(readXML(uri, 0));
+    }
+
+    @Nullable
+    @Override
+    public String readXML(URI uri, int frame) throws Exception {
         try (NetClient nc = NetClient.of(uri); ImageInputStream iis = ImageIO.createImageInputStream(nc.getStream())) {
             ImageReader reader = getReader(iis);
             if (reader == null)
                 throw new Exception("No image reader found");
 
-            ImageBuffer imageBuffer = buffered2ImageBuffer(reader.read(0));
+            String xml = readXML(reader, uri);
+            reader.dispose();
+            return xml;
+        }
+    }
+
+    // from the metadata of the first image
+    @Nullable
+    private static String readXML(ImageReader reader, URI uri) {
+        try {
+            IIOMetadata metadata = reader.getImageMetadata(0); // random files may have malformed metadata
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree("javax_imageio_1.0");
+            Object text = root.getElementsByTagName("TextEntry").item(0);
+            if (text instanceof IIOMetadataNode) {
+                return ((IIOMetadataNode) text).getAttribute("value");
+            }
+        } catch (Exception e) {
+            Log.error(uri.toString(), e);
+        }
+        return null;
+    }
+
+    @Override
+    public ImageBuffer readImageBuffer(URI uri, int frame) throws Exception {
+        return readImageBuffer(uri, frame, 0);
+    }
+
+    // lower levels are decoded with source subsampling, the size is the same as of the pyramid
+    @Override
+    public ImageBuffer readImageBuffer(URI uri, int frame, int level) throws Exception {
+        try (NetClient nc = NetClient.of(uri); ImageInputStream iis = ImageIO.createImageInputStream(nc.getStream())) {
+            ImageReader reader = getReader(iis);
+            if (reader == null)
+                throw new Exception("No image reader found");
+
+            ImageBuffer imageBuffer = read(reader, level);
             reader.dispose();
             return imageBuffer;
         }
     }
 
+    private static ImageBuffer read(ImageReader reader, int level) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        level = Math.min(level, ImagePyramid.numLevels(reader.getWidth(0), reader.getHeight(0)));
+        if (level > 0) {
+            int step = 1 << level;
+            param.setSourceSubsampling(step, step, 0, 0);
+        }
+        ImageTypeSpecifier type = directType(reader);
+        if (type != null)
+            param.setDestinationType(type);
+        return buffered2ImageBuffer(reader.read(0, param));
+    }
+
+    private static final int[] colorTypes = {BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB};
+
+    // for color images, a destination that can be used without drawing into another image
+    @Nullable
+    private static ImageTypeSpecifier directType(ImageReader reader) throws IOException {
+        ImageTypeSpecifier raw = reader.getRawImageType(0);
+        if (raw == null || raw.getNumComponents() == 1 || raw.getColorModel() instanceof IndexColorModel)
+            return null;
+
+        ImageTypeSpecifier best = null;
+        int bestRank = colorTypes.length;
+        for (Iterator<ImageTypeSpecifier> it = reader.getImageTypes(0); it.hasNext(); ) {
+            ImageTypeSpecifier type = it.next();
+            for (int i = 0; i < bestRank; i++) {
+                if (type.getBufferedImageType() == colorTypes[i]) {
+                    best = type;
+                    bestRank = i;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
     @Nullable
     private static ImageReader getReader(ImageInputStream iis) {
         Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
@@ -105,6 +179,23 @@ class GenericImage implements URIImageReader {
                 buffer = IntBuffer.wrap(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
                 format = ImageBuffer.Format.ARGB32;
             }
+            case BufferedImage.TYPE_INT_RGB -> { // opaque, in place
+                int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                for (int i = 0; i < data.length; i++)
+                    data[i] |= 0xFF000000;
+                buffer = IntBuffer.wrap(data);
+                format = ImageBuffer.Format.ARGB32;
+            }
+            case BufferedImage.TYPE_INT_ARGB -> { // premultiplied in place
+                int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                for (int i = 0; i < data.length; i++) {
+                    int p = data[i], a = p >>> 24;
+                    if (a != 0xFF)
+                        data[i] = a << 24 | ((p >> 16 & 0xFF) * a + 127) / 255 << 16 | ((p >> 8 & 0xFF) * a + 127) / 255 << 8 | ((p & 0xFF) * a + 127) / 255;
+                }
+                buffer = IntBuffer.wrap(data);
+                format = ImageBuffer.Format.ARGB32;
+            }
             default -> {
                 BufferedImage conv = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
                 conv.getGraphics().drawImage(image, 0, 0, null);
@@ -2,20 +2,45 @@ package org.helioviewer.jhv.view.uri;
 
 import java.net.URI;
 import java.util.concurrent.Callable;
+import java.util.function.ObjIntConsumer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.helioviewer.jhv.imagedata.ImageBuffer;
+import org.helioviewer.jhv.imagedata.ImagePyramid;
 
-record URIDecoder(URI uri, URIImageReader reader, boolean mgn) implements Callable<ImageBuffer> {
+// returns the requested level of the pyramid; if given a sink, all the levels are built and passed to it
+record URIDecoder(URI uri, URIImageReader reader, int frame, boolean mgn, int level,
+                  @Nullable ObjIntConsumer<ImageBuffer> levels) implements Callable<ImageBuffer> {
 
     @Nonnull
     @Override
     public ImageBuffer call() throws Exception {
-        ImageBuffer imageBuffer = reader.readImageBuffer(uri);
+        if (levels == null) { // only the level requested, the reader may decode it directly
+            ImageBuffer imageBuffer = reader.readImageBuffer(uri, frame, level);
+            if (imageBuffer == null) // e.g. FITS
+                throw new Exception("Could not read: " + uri);
+            return ImageBuffer.mgnFilter(imageBuffer, mgn);
+        }
+
+        ImageBuffer imageBuffer = reader.readImageBuffer(uri, frame);
         if (imageBuffer == null) // e.g. FITS
             throw new Exception("Could not read: " + uri);
-        return ImageBuffer.mgnFilter(imageBuffer, mgn);
+        imageBuffer = ImageBuffer.mgnFilter(imageBuffer, mgn);
+
+        int numLevels = ImagePyramid.numLevels(imageBuffer.width, imageBuffer.height);
+        int target = Math.min(level, numLevels); // the metadata may not tell the size
+        ImageBuffer ret = imageBuffer;
+        for (int i = 0; ; i++) {
+            levels.accept(imageBuffer, i);
+            if (i == target)
+                ret = imageBuffer;
+            if (i >= numLevels)
+                break;
+            imageBuffer = ImageBuffer.downsample(imageBuffer);
+        }
+        return ret;
     }
 
 }
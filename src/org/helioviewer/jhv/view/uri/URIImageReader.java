@@ -1,18 +1,36 @@
 package org.helioviewer.jhv.view.uri;
 
 import java.net.URI;
+import java.util.List;
 
 import javax.annotation.Nullable;
 
 import org.helioviewer.jhv.imagedata.ImageBuffer;
+import org.helioviewer.jhv.imagedata.ImagePyramid;
 
 interface URIImageReader {
 
     record Image(@Nullable String xml, ImageBuffer buffer) {
     }
 
+    // the first frame of the file
     Image readImage(URI uri) throws Exception;
 
-    ImageBuffer readImageBuffer(URI uri) throws Exception;
+    // the metadata of each frame, without decoding the pixels; only FITS cubes and multi-extension files have more than one
+    List<String> readFramesXML(URI uri) throws Exception;
+
+    @Nullable
+    String readXML(URI uri, int frame) throws Exception;
+
+    ImageBuffer readImageBuffer(URI uri, int frame) throws Exception;
+
+    // a level of the pyramid, by default downsampled from the full resolution
+    default ImageBuffer readImageBuffer(URI uri, int frame, int level) throws Exception {
+        ImageBuffer imageBuffer = readImageBuffer(uri, frame);
+        level = Math.min(level, ImagePyramid.numLevels(imageBuffer.width, imageBuffer.height));
+        for (int i = 0; i < level; i++)
+            imageBuffer = ImageBuffer.downsample(imageBuffer);
+        return imageBuffer;
+    }
 
 }
@@ -0,0 +1,285 @@
+package org.helioviewer.jhv.view.uri;
+
+import java.awt.EventQueue;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.helioviewer.jhv.Log;
+import org.helioviewer.jhv.astronomy.Position;
+import org.helioviewer.jhv.base.Region;
+import org.helioviewer.jhv.imagedata.ImageBuffer;
+import org.helioviewer.jhv.imagedata.ImageData;
+import org.helioviewer.jhv.io.NetFileCache;
+import org.helioviewer.jhv.metadata.MetaData;
+import org.helioviewer.jhv.metadata.PixelBasedMetaData;
+import org.helioviewer.jhv.metadata.XMLMetaDataContainer;
+import org.helioviewer.jhv.threads.EventQueueCallbackExecutor;
+import org.helioviewer.jhv.time.JHVTime;
+import org.helioviewer.jhv.time.TimeMap;
+import org.helioviewer.jhv.view.BaseView;
+import org.helioviewer.jhv.view.DecodeCache;
+import org.helioviewer.jhv.view.DecodeCallback;
+import org.helioviewer.jhv.view.DecodeExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+// A series of image files as one multi-frame view, the planes of FITS cubes and the image extensions
+// of FITS files are frames on their own. Only the headers are read when loading;
+// the pixels are decoded on demand for the current frame and a window ahead of it, and the decoded
+// frames are kept within the budget of the decode cache.
+public class URISeriesView extends BaseView {
+
+    private record Frame(URI uri, URIImageReader reader, int index, MetaData metaData, Region region) {
+    }
+
+    // a frame of a series at a level of the pyramid, only the levels in use are kept
+    private record Key(Object series, int frame, int level) {
+    }
+
+    private static final DecodeCache<Key> decodeCache = new DecodeCache<>(Key::series);
+
+    private final Frame[] frames; // in time order
+    private final TimeMap<Integer> frameMap = new TimeMap<>();
+    private final Object series = new Object(); // the partition in the decode cache, not the view itself
+    private int targetFrame;
+
+    private final ConcurrentHashMap<Key, ListenableFuture<ImageBuffer>> prefetching = new ConcurrentHashMap<>();
+
+    public URISeriesView(DecodeExecutor _executor, List<URI> uris, boolean forceFITS) throws Exception {
+        super(_executor, null, null);
+
+        List<Frame> list = uris.parallelStream().flatMap(uri -> {
+            try {
+                return readFrames(NetFileCache.get(uri), Objects.requireNonNull(URIView.URIType.of(uri, forceFITS)).getReader()).stream();
+            } catch (Exception e) {
+                Log.warn(uri.toString(), e);
+                return Stream.empty();
+            }
+        }).toList();
+        if (list.isEmpty())
+            throw new Exception("No readable image");
+
+        for (int i = 0; i < list.size(); i++)
+            frameMap.putIfAbsent(list.get(i).metaData.getViewpoint().time, i); // duplicate times are dropped
+        frameMap.buildIndex();
+
+        int numFrames = frameMap.maxIndex() + 1;
+        frames = new Frame[numFrames];
+        metaData = new MetaData[numFrames];
+        for (int i = 0; i < numFrames; i++) {
+            frames[i] = list.get(frameMap.indexedValue(i));
+            metaData[i] = frames[i].metaData;
+            frameMap.put(frameMap.key(i), i);
+        }
+    }
+
+    private static List<Frame> readFrames(URI uri, URIImageReader reader) throws Exception {
+        List<String> xmls = reader.readFramesXML(uri);
+        ArrayList<Frame> frames = new ArrayList<>(xmls.size());
+        for (int i = 0; i < xmls.size(); i++) {
+            String xml = xmls.get(i);
+            try {
+                MetaData m = xml == null ? new PixelBasedMetaData(100, 100, uri) : new XMLMetaDataContainer(xml).getHVMetaData();
+                Region region = m.roiToRegion(0, 0, m.getPixelWidth(), m.getPixelHeight(), 1, 1);
+                frames.add(new Frame(uri, reader, i, m, region));
+            } catch (Exception e) {
+                Log.warn(uri + "[" + i + "]", e);
+            }
+        }
+        return frames;
+    }
+
+    private URIDecoder decoder(Key key) {
+        Frame frame = frames[key.frame];
+        return new URIDecoder(frame.uri, frame.reader, frame.index, mgn, key.level, null);
+    }
+
+    @Override
+    public void decode(Position viewpoint, @Nullable Region visibleArea, double pixFactor, float factor) {
+        int frame = targetFrame;
+        Key key = new Key(series, frame, URIView.getLevel(frames[frame].metaData, pixFactor));
+        ImageBuffer imageBuffer = decodeCache.getIfPresent(key);
+        if (imageBuffer != null && imageBuffer.retain()) {
+            sendDataToHandler(frame, imageBuffer, viewpoint);
+            imageBuffer.release();
+        } else {
+            ListenableFuture<ImageBuffer> pending = prefetching.get(key);
+            if (pending != null)
+                EventQueueCallbackExecutor.addCallback(pending, new URISeriesCallback(key, viewpoint, false));
+            else
+                executor.decode(decoder(key), new URISeriesCallback(key, viewpoint, true));
+        }
+
+        if (frames.length > 1)
+            prefetch(frame, pixFactor);
+    }
+
+    // decode ahead of the frame in the direction of playback
+    private void prefetch(int frame, double pixFactor) {
+        DecodeExecutor.forEachPrefetchFrame(frame, frames.length - 1, next -> {
+            Key key = new Key(series, next, URIView.getLevel(frames[next].metaData, pixFactor));
+            if (prefetching.containsKey(key) || decodeCache.getIfPresent(key) != null)
+                return;
+            ListenableFuture<ImageBuffer> future = DecodeExecutor.prefetch(decoder(key));
+            if (future.isDone()) // dropped
+                return;
+            prefetching.put(key, future);
+            Futures.addCallback(future, new PrefetchCallback(key, prefetching), MoreExecutors.directExecutor());
+        });
+    }
+
+    private record PrefetchCallback(Key key,
+                                    ConcurrentHashMap<Key, ListenableFuture<ImageBuffer>> map) implements FutureCallback<ImageBuffer> {
+        @Override
+        public void onSuccess(ImageBuffer result) {
+            if (map.remove(key) != null) // not cancelled meanwhile
+                decodeCache.put(key, result);
+            result.release();
+        }
+
+        @Override
+        public void onFailure(@Nonnull Throwable t) {
+            map.remove(key);
+        }
+    }
+
+    private class URISeriesCallback extends DecodeCallback {
+
+        private final Key key;
+        private final Position viewpoint;
+        private final boolean owner; // holds the reference of the decoder, otherwise shares the result of a prefetch
+
+        URISeriesCallback(Key _key, Position _viewpoint, boolean _owner) {
+            key = _key;
+            viewpoint = _viewpoint;
+            owner = _owner;
+        }
+
+        @Override
+        public void onSuccess(ImageBuffer result) {
+            if (!owner && !result.retain()) { // already evicted and recycled
+                executor.decode(decoder(key), new URISeriesCallback(key, viewpoint, true));
+                return;
+            }
+            if (owner) // the cache takes its own reference
+                decodeCache.put(key, result);
+            sendDataToHandler(key.frame, result, viewpoint);
+            result.release();
+        }
+
+        @Override
+        public void onFailure(@Nonnull Throwable t) {
+            if (t instanceof CancellationException) // prefetch dropped, decode now
+                executor.decode(decoder(key), new URISeriesCallback(key, viewpoint, true));
+            else
+                super.onFailure(t);
+        }
+
+    }
+
+    // the caller holds a reference to imageBuffer, the handler takes its own
+    private void sendDataToHandler(int frame, ImageBuffer imageBuffer, Position viewpoint) {
+        ImageData data = new ImageData(imageBuffer, frames[frame].metaData, frames[frame].region, viewpoint);
+        imageBuffer.retain();
+        EventQueue.invokeLater(() -> { // decouple from ImageLayers.displaySynced
+            if (dataHandler != null)
+                dataHandler.handleData(data);
+            imageBuffer.release();
+        });
+    }
+
+    @Override
+    public boolean isMultiFrame() {
+        return frames.length > 1;
+    }
+
+    @Override
+    public int getCurrentFrameNumber() {
+        return targetFrame;
+    }
+
+    @Override
+    public int getMaximumFrameNumber() {
+        return frames.length - 1;
+    }
+
+    @Override
+    public JHVTime getFirstTime() {
+        return frameMap.firstKey();
+    }
+
+    @Override
+    public JHVTime getLastTime() {
+        return frameMap.lastKey();
+    }
+
+    @Override
+    public boolean setNearestFrame(JHVTime time) {
+        targetFrame = frameMap.nearestValue(time);
+        return true;
+    }
+
+    @Override
+    public JHVTime getFrameTime(int frame) {
+        return frameMap.key(frame);
+    }
+
+    @Override
+    public JHVTime getNearestTime(JHVTime time) {
+        return frameMap.nearestKey(time);
+    }
+
+    @Override
+    public JHVTime getLowerTime(JHVTime time) {
+        return frameMap.lowerKey(time);
+    }
+
+    @Override
+    public JHVTime getHigherTime(JHVTime time) {
+        return frameMap.higherKey(time);
+    }
+
+    @Override
+    public MetaData getMetaData(JHVTime time) {
+        return metaData[frameMap.nearestValue(time)];
+    }
+
+    // not kept, read again from the file
+    @Nonnull
+    @Override
+    public String getXMLMetaData() {
+        Frame frame = frames[targetFrame];
+        try {
+            String xml = frame.reader.readXML(frame.uri, frame.index);
+            if (xml != null)
+                return xml;
+        } catch (Exception e) {
+            Log.warn(frame.uri.toString(), e);
+        }
+        return "<meta/>";
+    }
+
+    @Override
+    public void abolish() {
+        clearCache();
+    }
+
+    @Override
+    public void clearCache() {
+        prefetching.values().forEach(f -> f.cancel(false));
+        prefetching.clear();
+        decodeCache.invalidatePartition(series);
+    }
+
+}
@@ -2,27 +2,33 @@ package org.helioviewer.jhv.view.uri;
 
 import java.awt.EventQueue;
 import java.net.URI;
+import java.util.Locale;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.helioviewer.jhv.astronomy.Position;
 import org.helioviewer.jhv.base.Region;
 import org.helioviewer.jhv.imagedata.ImageBuffer;
 import org.helioviewer.jhv.imagedata.ImageData;
+import org.helioviewer.jhv.imagedata.ImagePyramid;
 import org.helioviewer.jhv.io.APIRequest;
+import org.helioviewer.jhv.layers.Movie;
 import org.helioviewer.jhv.metadata.MetaData;
 import org.helioviewer.jhv.metadata.PixelBasedMetaData;
 import org.helioviewer.jhv.metadata.XMLMetaDataContainer;
 import org.helioviewer.jhv.view.BaseView;
+import org.helioviewer.jhv.view.DecodeCache;
 import org.helioviewer.jhv.view.DecodeCallback;
 import org.helioviewer.jhv.view.DecodeExecutor;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-
 public class URIView extends BaseView {
 
-    private static final Cache<URI, ImageBuffer> decodeCache = Caffeine.newBuilder().softValues().build();
+    // levels of the pyramid, partitioned per image
+    private record Level(URI uri, int level) {
+    }
+
+    private static final DecodeCache<Level> decodeCache = new DecodeCache<>(Level::uri);
 
     public enum URIType {
 
@@ -41,6 +47,17 @@ public class URIView extends BaseView {
 
         protected abstract URIImageReader getReader();
 
+        // null for the other formats, i.e. JPEG2000
+        @Nullable
+        public static URIType of(URI uri, boolean forceFITS) {
+            String loc = uri.toString().toLowerCase(Locale.ENGLISH);
+            if (forceFITS || loc.endsWith(".fits") || loc.endsWith(".fts") || loc.endsWith(".fits.gz"))
+                return FITS;
+            else if (loc.endsWith(".png") || loc.endsWith(".jpg") || loc.endsWith(".jpeg"))
+                return GENERIC;
+            return null;
+        }
+
     }
 
     private final URIImageReader reader;
@@ -66,17 +83,36 @@ public class URIView extends BaseView {
 
             imageRegion = m.roiToRegion(0, 0, m.getPixelWidth(), m.getPixelHeight(), 1, 1);
             metaData[0] = m;
-            decodeCache.put(uri, image.buffer());
+            putLevels(image.buffer());
         } catch (Exception e) {
             throw new Exception(e.getMessage() + ": " + uri, e);
         }
     }
 
+    private void putLevels(ImageBuffer imageBuffer) {
+        int numLevels = ImagePyramid.numLevels(imageBuffer.width, imageBuffer.height);
+        for (int i = 0; ; i++) {
+            decodeCache.put(new Level(uri, i), imageBuffer);
+            if (i >= numLevels)
+                break;
+            imageBuffer = ImageBuffer.downsample(imageBuffer);
+        }
+    }
+
+    // the level of the pyramid for the pixel density on screen
+    static int getLevel(MetaData m, double pixFactor) {
+        if (Movie.isRecording())
+            return 0;
+        int required = (int) (m.getPhysicalRegion().height * pixFactor + .5);
+        return ImagePyramid.getLevel(m.getPixelWidth(), m.getPixelHeight(), required);
+    }
+
     @Override
-    public void decode(Position viewpoint, double pixFactor, float factor) {
-        ImageBuffer imageBuffer = decodeCache.getIfPresent(uri);
+    public void decode(Position viewpoint, @Nullable Region visibleArea, double pixFactor, float factor) {
+        int level = getLevel(metaData[0], pixFactor);
+        ImageBuffer imageBuffer = decodeCache.getIfPresent(new Level(uri, level));
         if (imageBuffer == null) {
-            executor.decode(new URIDecoder(uri, reader, mgn), new URICallback(viewpoint));
+            executor.decode(new URIDecoder(uri, reader, 0, mgn, level, (ib, l) -> decodeCache.put(new Level(uri, l), ib)), new URICallback(viewpoint));
         } else {
             sendDataToHandler(imageBuffer, viewpoint);
         }
@@ -91,8 +127,7 @@ public class URIView extends BaseView {
         }
 
         @Override
-        public void onSuccess(ImageBuffer result) {
-            decodeCache.put(uri, result);
+        public void onSuccess(ImageBuffer result) { // the levels are cached by the decoder
             sendDataToHandler(result, viewpoint);
         }
 
@@ -114,12 +149,12 @@ public class URIView extends BaseView {
 
     @Override
     public void abolish() {
-        decodeCache.invalidate(uri);
+        decodeCache.invalidatePartition(uri);
     }
 
     @Override
     public void clearCache() {
-        decodeCache.invalidateAll();
+        decodeCache.invalidatePartition(uri);
     }
 
 }